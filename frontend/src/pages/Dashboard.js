@@ -1,6 +1,6 @@
 import { useState, useEffect, useCallback } from 'react';
 import { Link } from 'react-router-dom';
-import { getUnlockedCapsules, getLockedCapsules, deleteCapsule, updateCapsule } from '../services/capsuleService';
+import { getUnlockedCapsules, getLockedCapsules, getCapsuleById, deleteCapsule, updateCapsule } from '../services/capsuleService';
 import { TrashIcon, PencilIcon } from '@heroicons/react/24/outline';
 
 const Dashboard = () => {
@@ -66,7 +66,7 @@ const Dashboard = () => {
     }
   };
 
- const handleEditCapsule = (capsule) => {
+ const handleEditCapsule = async (capsule) => {
    setEditingCapsule(capsule);
 
    // Create a date object from the ISO string
@@ -84,9 +84,20 @@ const Dashboard = () => {
 
    setEditFormData({
      title: capsule.title,
-     message: capsule.message || '',
+     message: '',
      unlockDateTime: formattedDateTime
    });
+
+   // The capsule lists no longer carry message bodies
+   try {
+     const fullCapsule = await getCapsuleById(capsule.id);
+     setEditFormData(prev => ({ ...prev, message: fullCapsule.message || '' }));
+   } catch (error) {
+     // Do not let a save overwrite the message with an empty one
+     setEditingCapsule(null);
+     setError(error.message || 'Failed to load capsule message');
+     setTimeout(() => setError(''), 5000);
+   }
  };
 
   const handleEditFormChange = (e) => {
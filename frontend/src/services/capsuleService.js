@@ -18,7 +18,22 @@ export const createCapsule = async (capsuleData) => {
 export const getCapsuleById = async (id) => {
   try {
     const response = await api.get(`/capsules/${id}`);
-    return response.data;
+    const capsule = response.data;
+    // Large messages are not inlined and have to be fetched separately
+    if (capsule.message == null && capsule.messageLength > 0) {
+      const message = await api.get(`/capsules/${id}/message`, { responseType: 'text' });
+      capsule.message = message.data;
+    }
+    // Attachments of unlocked capsules are served from short-lived signed URLs
+    if (capsule.filePath && new Date(capsule.unlockDateTime) <= new Date()) {
+      try {
+        const attachment = await api.get(`/capsules/${id}/attachment-url`);
+        capsule.fileUrl = `${API_BASE_URL}${attachment.data.url}`;
+      } catch (attachmentError) {
+        console.error('Error fetching attachment URL:', attachmentError);
+      }
+    }
+    return capsule;
   } catch (error) {
     console.error('Error fetching capsule:', error);
     throw new Error(error.response?.data?.message || 'Failed to fetch capsule');
@@ -78,7 +93,6 @@ export const getLockedCapsules = async () => {
   }
 };
 
-
 export const updateCapsule = async (id, capsuleData) => {
   const token = localStorage.getItem('token');
   const response = await fetch(`${API_BASE_URL}/api/capsules/${id}`, {
@@ -0,0 +1,47 @@
+#!/usr/bin/env bash
+# Measures time-to-first-request and resident memory of the application.
+# Usage: scripts/measure-startup.sh image <image> [extra docker run args...]
+#        scripts/measure-startup.sh command <command...>   e.g. java -jar target/app.jar
+# The database settings come from the SPRING_DATASOURCE_* variables in the environment.
+# Run it once before measuring so the schema migrations are not part of the numbers.
+set -euo pipefail
+
+MODE=$1
+shift
+PORT=${PORT:-18080}
+
+start=$(date +%s%N)
+case "$MODE" in
+  image)
+    IMAGE=$1
+    shift
+    container=$(docker run -d --rm -p "$PORT:8080" \
+      -e SPRING_DATASOURCE_URL -e SPRING_DATASOURCE_USERNAME -e SPRING_DATASOURCE_PASSWORD -e JWT_SECRET \
+      "$@" "$IMAGE")
+    trap 'docker stop "$container" >/dev/null' EXIT
+    ;;
+  command)
+    SERVER_PORT=$PORT "$@" >"${LOG:-/dev/null}" 2>&1 &
+    pid=$!
+    trap 'kill "$pid"; wait "$pid" 2>/dev/null || true' EXIT
+    ;;
+  *)
+    echo "unknown mode: $MODE" >&2
+    exit 2
+    ;;
+esac
+
+# Any HTTP status means the server answered; the login endpoint touches JPA and Security
+until status=$(curl -s -o /dev/null -w '%{http_code}' -X POST -H 'Content-Type: application/json' \
+    -d '{"username":"startup-probe","password":"x"}' "http://localhost:$PORT/api/auth/login") \
+    && [ "$status" != "000" ]; do
+  sleep 0.05
+done
+end=$(date +%s%N)
+
+echo "time-to-first-req:  $(( (end - start) / 1000000 )) ms"
+if [ "$MODE" = image ]; then
+  echo "rss:                $(docker stats --no-stream --format '{{.MemUsage}}' "$container")"
+else
+  echo "rss:                $(awk '/^VmRSS/ { print $2 / 1024 " MiB" }' "/proc/$pid/status")"
+fi
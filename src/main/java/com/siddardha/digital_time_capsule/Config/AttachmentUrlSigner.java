@@ -0,0 +1,108 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+
+/**
+ * Signs and verifies attachment URLs of the form
+ * {@code /files/<capsule id>/<name>?path=<stored path>&expires=<epoch seconds>&signature=<HMAC>},
+ * so attachments can be served without a JWT or a database lookup. The signed
+ * path is the capsule's {@code filePath} as it was when the URL was issued, which
+ * also locates files stored under an earlier upload directory or packed since. Expiry times are rounded up
+ * to a bucket: all URLs issued for a file within one bucket are identical, which
+ * lets a caching proxy in front of {@code /files} serve repeat requests.
+ */
+@Component
+public class AttachmentUrlSigner {
+
+    public static final String PATH_PREFIX = "/files/";
+
+    private final SecretKey key;
+    private final long ttlSeconds;
+    private final long bucketSeconds;
+    private final Clock clock;
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    @Autowired
+    public AttachmentUrlSigner(JwtUtil jwtUtil,
+                               @Value("${attachment.url.ttl-seconds:900}") long ttlSeconds,
+                               @Value("${attachment.url.bucket-seconds:300}") long bucketSeconds) {
+        this(jwtUtil.deriveKey("attachment-url"), ttlSeconds, bucketSeconds, Clock.systemUTC());
+    }
+
+    AttachmentUrlSigner(SecretKey key, long ttlSeconds, long bucketSeconds, Clock clock) {
+        if (ttlSeconds <= 0 || bucketSeconds <= 0) {
+            throw new IllegalArgumentException("Attachment URL ttl and bucket must be positive");
+        }
+        this.key = key;
+        this.ttlSeconds = ttlSeconds;
+        this.bucketSeconds = bucketSeconds;
+        this.clock = clock;
+    }
+
+    public SignedUrl sign(long capsuleId, String filePath) {
+        long earliest = clock.instant().getEpochSecond() + ttlSeconds;
+        long expires = Math.ceilDiv(earliest, bucketSeconds) * bucketSeconds;
+        String url = PATH_PREFIX + capsuleId + "/" + UriUtils.encodePathSegment(fileName(filePath), StandardCharsets.UTF_8)
+                + "?path=" + URLEncoder.encode(filePath, StandardCharsets.UTF_8)
+                + "&expires=" + expires + "&signature=" + signature(capsuleId, filePath, expires);
+        return new SignedUrl(url, expires);
+    }
+
+    // The name in the URL is only there for the browser, but must match the signed path
+    public boolean verify(long capsuleId, String name, String filePath, long expires, String signature) {
+        if (expires <= clock.instant().getEpochSecond() || !fileName(filePath).equals(name)) {
+            return false;
+        }
+        byte[] given;
+        try {
+            given = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(mac(capsuleId, filePath, expires), given);
+    }
+
+    // Last segment of a stored path, whichever separator it was stored with
+    public static String fileName(String filePath) {
+        return filePath.substring(Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\')) + 1);
+    }
+
+    public long secondsUntil(long expires) {
+        return Math.max(0, expires - clock.instant().getEpochSecond());
+    }
+
+    private String signature(long capsuleId, String filePath, long expires) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac(capsuleId, filePath, expires));
+    }
+
+    private byte[] mac(long capsuleId, String filePath, long expires) {
+        Mac mac = macs.get();
+        return mac.doFinal((capsuleId + "\n" + filePath + "\n" + expires).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    public record SignedUrl(String url, long expiresAt) {
+    }
+}
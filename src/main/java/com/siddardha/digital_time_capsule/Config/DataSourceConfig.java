@@ -0,0 +1,154 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.task.TaskDecorator;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${app.datasource.replica.url:}")
+    private String replicaUrl;
+
+    @Value("${app.datasource.replica.username:}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.maximum-pool-size:5}")
+    private int replicaPoolSize;
+
+    @Value("${app.datasource.replica.connection-timeout:2000}")
+    private long replicaConnectionTimeout;
+
+    @Value("${app.datasource.replica.retry-interval-ms:30000}")
+    private long replicaRetryInterval;
+
+    // Shards 1..n; shard 0 is the primary above
+    @Value("${app.datasource.shards.urls:}")
+    private String shardUrls;
+
+    @Value("${app.datasource.shards.username:}")
+    private String shardUsername;
+
+    @Value("${app.datasource.shards.password:}")
+    private String shardPassword;
+
+    @Value("${app.datasource.shards.maximum-pool-size:5}")
+    private int shardPoolSize;
+
+    // Read at runtime: under AOT the Flyway beans exist whatever spring.flyway.enabled said at build time
+    @Value("${spring.flyway.enabled:true}")
+    private boolean flywayEnabled;
+
+    private HikariDataSource replica;
+
+    private final List<HikariDataSource> shardPools = new ArrayList<>();
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    // Connections go to the shard picked by ShardContext. On shard 0, read-only transactions go to
+    // the replica when one is configured, everything else to the primary.
+    @Bean
+    @Primary
+    public ShardRoutingDataSource dataSource(HikariDataSource primaryDataSource) {
+        replica = replicaDataSource();
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(ReplicaRoutingDataSource.create(primaryDataSource, replica, replicaRetryInterval));
+        for (String url : shardUrls.split(",")) {
+            if (!url.isBlank()) {
+                shards.add(shardDataSource(shards.size(), url.trim()));
+            }
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    // Brings every shard to the same schema version; each shard gets its own capsule id range (V5)
+    @Bean
+    public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource dataSource) {
+        return flyway -> {
+            if (!flywayEnabled) {
+                return;
+            }
+            flyway.migrate();
+            for (int shard = 1; shard < dataSource.shardCount(); shard++) {
+                Map<String, String> placeholders = new HashMap<>(flyway.getConfiguration().getPlaceholders());
+                placeholders.put("shard_index", String.valueOf(shard));
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(dataSource.shard(shard))
+                        .placeholders(placeholders)
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+
+    // Applied to the application task executor, which runs password hashing completions
+    // (user saves) and streamed responses such as the export
+    @Bean
+    public TaskDecorator readYourWritesTaskDecorator() {
+        return ReadYourWritesContext::clearingAfter;
+    }
+
+    @PreDestroy
+    public void closePools() {
+        if (replica != null) {
+            replica.close();
+        }
+        shardPools.forEach(HikariDataSource::close);
+    }
+
+    private HikariDataSource replicaDataSource() {
+        if (replicaUrl == null || replicaUrl.isBlank()) {
+            return null;
+        }
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setMaximumPoolSize(replicaPoolSize);
+        dataSource.setConnectionTimeout(replicaConnectionTimeout);
+        // Start even if the replica is down; reads fall back to the primary meanwhile
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+
+    private HikariDataSource shardDataSource(int shard, String url) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(shardUsername)
+                .password(shardPassword)
+                .build();
+        dataSource.setPoolName("shard-" + shard);
+        dataSource.setMaximumPoolSize(shardPoolSize);
+        shardPools.add(dataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,60 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import com.siddardha.digital_time_capsule.DTO.CapsuleRequest;
+import com.siddardha.digital_time_capsule.DTO.CapsuleResponse;
+import com.siddardha.digital_time_capsule.DTO.UpdateCapsuleRequest;
+import com.siddardha.digital_time_capsule.Model.Capsule;
+import com.siddardha.digital_time_capsule.Model.User;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Reflection and resource hints for the GraalVM native image ({@code -Pnative}).
+ * Entities and DTOs are bound by Jackson (entities are also returned directly by
+ * some endpoints), and jjwt instantiates its implementation classes by name and
+ * finds its Jackson (de)serializers through {@link java.util.ServiceLoader}.
+ * <p>
+ * Types that are never bound by Jackson need nothing here: {@code CapsuleMessage}
+ * gets its hints from Spring's JPA AOT processing like every entity, and the
+ * records used internally (pack entries, signed URLs, shard placements) are not
+ * reflected on. The native image has not been built or run yet, so these hints
+ * are unverified; run {@code mvn -PnativeTest test} before relying on it.
+ */
+@Configuration
+@RegisterReflectionForBinding({
+        Capsule.class, User.class,
+        CapsuleRequest.class, CapsuleResponse.class, UpdateCapsuleRequest.class
+})
+@ImportRuntimeHints(NativeHintsConfig.JwtRuntimeHints.class)
+public class NativeHintsConfig {
+
+    static class JwtRuntimeHints implements RuntimeHintsRegistrar {
+
+        private static final String[] JJWT_TYPES = {
+                "io.jsonwebtoken.impl.DefaultJwtBuilder",
+                "io.jsonwebtoken.impl.DefaultJwtParser",
+                "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+                "io.jsonwebtoken.impl.DefaultClaims",
+                "io.jsonwebtoken.impl.DefaultHeader",
+                "io.jsonwebtoken.impl.DefaultJwsHeader",
+                "io.jsonwebtoken.impl.compression.DeflateCompressionCodec",
+                "io.jsonwebtoken.impl.compression.GzipCompressionCodec",
+                "io.jsonwebtoken.jackson.io.JacksonSerializer",
+                "io.jsonwebtoken.jackson.io.JacksonDeserializer"
+        };
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (String type : JJWT_TYPES) {
+                hints.reflection().registerType(TypeReference.of(type),
+                        MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+            }
+            hints.resources().registerPattern("META-INF/services/io.jsonwebtoken.*");
+        }
+    }
+}
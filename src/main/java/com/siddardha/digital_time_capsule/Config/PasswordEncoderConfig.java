@@ -0,0 +1,61 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class PasswordEncoderConfig {
+
+    // Fixed BCrypt cost; 0 calibrates it at startup, which costs several hashes on a cold JVM
+    @Value("${auth.bcrypt.strength:12}")
+    private int strength;
+
+    @Value("${auth.bcrypt.target-millis:250}")
+    private long targetMillis;
+
+    @Value("${auth.bcrypt.min-strength:10}")
+    private int minStrength;
+
+    @Value("${auth.bcrypt.max-strength:14}")
+    private int maxStrength;
+
+    @Bean
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        int cost = strength > 0 ? strength : calibrateStrength(Duration.ofMillis(targetMillis), minStrength, maxStrength);
+        Gauge.builder("auth.bcrypt.strength", () -> cost).register(meterRegistry);
+        return new BCryptPasswordEncoder(cost);
+    }
+
+    /**
+     * Highest cost between the bounds whose hash takes at most {@code target} on this
+     * machine, never less than {@code min}. Each cost step doubles the work, so only
+     * the minimum cost is timed and the rest is extrapolated.
+     */
+    public static int calibrateStrength(Duration target, int min, int max) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(min);
+        encoder.encode("calibration");
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        int cost = min;
+        long nanos = fastest;
+        while (cost < max && nanos * 2 <= target.toNanos()) {
+            nanos *= 2;
+            cost++;
+        }
+        log.info("BCrypt cost {} takes about {} ms (target {} ms)", cost, nanos / 1_000_000, target.toMillis());
+        return cost;
+    }
+}
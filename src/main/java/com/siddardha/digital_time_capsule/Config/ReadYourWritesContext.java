@@ -0,0 +1,81 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Pins the current request to the primary database once it has written, so reads
+ * that follow a mutation in the same request never see a lagging replica. Clients
+ * can also pin a whole request (e.g. the page load right after creating a capsule)
+ * by sending the {@value #HEADER} header. Pooled threads outside a request (the
+ * shard fan-out, the application task executor) clear the pin after each task, so
+ * a write in one task does not keep later tasks off the replica.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ReadYourWritesContext extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Read-Your-Writes";
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    public static void pin() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPinned() {
+        return PINNED.get() != null;
+    }
+
+    public static void clear() {
+        PINNED.remove();
+    }
+
+    // Runs the work with the current thread pinned, restoring the previous state afterwards
+    public static <T> T onPrimary(Supplier<T> work) {
+        if (isPinned()) {
+            return work.get();
+        }
+        pin();
+        try {
+            return work.get();
+        } finally {
+            clear();
+        }
+    }
+
+    // Wraps a task for a pooled thread so it leaves no pin behind
+    public static Runnable clearingAfter(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } finally {
+                clear();
+            }
+        };
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        if (request.getHeader(HEADER) != null) {
+            pin();
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            clear();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of read-only connections: the replica, unless the current request is
+ * pinned by {@link ReadYourWritesContext} or the replica recently failed, in
+ * which case the primary is used until the retry interval has passed.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long retryIntervalMillis;
+
+    private volatile long replicaDownUntil;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, long retryIntervalMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * Connections are fetched lazily, on the first statement, so the read-only flag
+     * that {@code @Transactional(readOnly = true)} sets on the connection decides
+     * whether the replica or the primary serves it.
+     */
+    public static DataSource create(DataSource primary, DataSource replica, long retryIntervalMillis) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(new WriteTrackingDataSource(primary));
+        if (replica != null) {
+            proxy.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replica, retryIntervalMillis));
+        }
+        return proxy;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    private Connection route(ConnectionSource source) throws SQLException {
+        if (ReadYourWritesContext.isPinned() || System.currentTimeMillis() < replicaDownUntil) {
+            return source.from(primary);
+        }
+        try {
+            return source.from(replica);
+        } catch (SQLException e) {
+            replicaDownUntil = System.currentTimeMillis() + retryIntervalMillis;
+            log.warn("Read replica unavailable, using the primary for {} ms: {}", retryIntervalMillis, e.getMessage());
+            return source.from(primary);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSource {
+        Connection from(DataSource dataSource) throws SQLException;
+    }
+
+    // Pins the request to the primary as soon as a read-write transaction touches the database
+    private static class WriteTrackingDataSource extends DelegatingDataSource {
+
+        WriteTrackingDataSource(DataSource primary) {
+            super(primary);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (TransactionSynchronizationManager.isActualTransactionActive()
+                    && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                ReadYourWritesContext.pin();
+            }
+            return super.getConnection();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.siddardha.digital_time_capsule.Config;
+
+/**
+ * Shard the current thread's database connections come from. Threads that never
+ * select one use shard 0, which also holds the user directory. The shard has to
+ * be chosen before a transaction starts and must not change inside it.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    // Routes to the shard until the returned scope is closed, then restores the previous one
+    public static Scope use(int shard) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
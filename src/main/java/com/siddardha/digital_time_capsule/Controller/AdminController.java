@@ -2,6 +2,7 @@ package com.siddardha.digital_time_capsule.Controller;
 import com.siddardha.digital_time_capsule.Model.Capsule;
 import com.siddardha.digital_time_capsule.Model.User;
 import com.siddardha.digital_time_capsule.Service.AdminService;
+import com.siddardha.digital_time_capsule.Service.ShardRebalancer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,6 +15,7 @@ import java.util.*;
 public class AdminController {
 
     private final AdminService adminService;
+    private final ShardRebalancer shardRebalancer;
 
     @GetMapping("/users")
     public List<User> getAllUsers() {
@@ -39,4 +41,10 @@ public class AdminController {
     public Map<String, Long> getCapsuleCountPerUser() {
         return adminService.getCapsuleCountPerUser();
     }
+
+    // Moves users onto the shards they hash to, e.g. after adding a shard
+    @PostMapping("/shards/rebalance")
+    public Map<String, Long> rebalanceShards() {
+        return shardRebalancer.rebalance();
+    }
 }
\ No newline at end of file
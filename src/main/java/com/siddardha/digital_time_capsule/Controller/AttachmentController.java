@@ -0,0 +1,119 @@
+package com.siddardha.digital_time_capsule.Controller;
+
+import com.siddardha.digital_time_capsule.Config.AttachmentUrlSigner;
+import com.siddardha.digital_time_capsule.Service.FileStorageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves attachments through URLs issued by {@code GET /api/capsules/{id}/attachment-url}.
+ * The signature and expiry are checked in memory, with no JWT, user or capsule
+ * lookup, and responses are publicly cacheable until the URL expires. The path is
+ * outside the security filter chain, so the headers that keep an uploaded page or
+ * script from running on this origin are set here.
+ */
+@RestController
+@RequestMapping("/files")
+@RequiredArgsConstructor
+public class AttachmentController {
+
+    private final AttachmentUrlSigner attachmentUrlSigner;
+    private final FileStorageService fileStorageService;
+
+    @GetMapping("/{id}/{name}")
+    public ResponseEntity<StreamingResponseBody> getAttachment(@PathVariable long id,
+                                                               @PathVariable String name,
+                                                               @RequestParam("path") String filePath,
+                                                               @RequestParam long expires,
+                                                               @RequestParam String signature,
+                                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws IOException {
+        if (!attachmentUrlSigner.verify(id, name, filePath, expires, signature)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).headers(untrustedContentHeaders()).build();
+        }
+        // The signed path is exactly Capsule.filePath, which is also the key of a packed attachment
+        if (!fileStorageService.exists(filePath)) {
+            return ResponseEntity.notFound().headers(untrustedContentHeaders()).build();
+        }
+
+        // Stored paths are unique per upload and files never change, so the path identifies the content
+        String etag = "\"" + etag(filePath) + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(attachmentUrlSigner.secondsUntil(expires), TimeUnit.SECONDS)
+                .cachePublic()
+                .immutable();
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .headers(untrustedContentHeaders())
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        StreamingResponseBody body = out -> {
+            try (InputStream in = fileStorageService.openFile(filePath)) {
+                in.transferTo(out);
+            }
+        };
+        MediaType contentType = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        ContentDisposition.Builder disposition = isMedia(contentType)
+                ? ContentDisposition.inline()
+                : ContentDisposition.attachment();
+        return ResponseEntity.ok()
+                .headers(untrustedContentHeaders())
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .contentLength(fileStorageService.fileSize(filePath))
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition
+                        .filename(originalName(name), StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+
+    // No MIME sniffing, and a sandbox (no script, unique origin) for anything the browser does render
+    private static HttpHeaders untrustedContentHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Content-Type-Options", "nosniff");
+        headers.set("Content-Security-Policy", "sandbox");
+        return headers;
+    }
+
+    // Only media is shown in the browser; SVG is an image that can carry script, so it is downloaded too
+    private static boolean isMedia(MediaType type) {
+        return switch (type.getType()) {
+            case "image" -> !type.getSubtype().contains("svg");
+            case "audio", "video" -> true;
+            default -> false;
+        };
+    }
+
+    private static String etag(String filePath) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(filePath.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Stored names are "<upload millis>_<original name>"
+    private static String originalName(String name) {
+        int separator = name.indexOf('_');
+        return separator >= 0 ? name.substring(separator + 1) : name;
+    }
+}
@@ -2,13 +2,16 @@ package com.siddardha.digital_time_capsule.Controller;
 import com.siddardha.digital_time_capsule.Config.JwtUtil;
 import com.siddardha.digital_time_capsule.Model.User;
 import com.siddardha.digital_time_capsule.Repository.UserRepository;
+import com.siddardha.digital_time_capsule.Service.PasswordHashingService;
+import com.siddardha.digital_time_capsule.Service.ShardRouter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 
 @RestController
 @RequestMapping("/api/auth")
@@ -17,25 +20,38 @@ import org.springframework.web.bind.annotation.*;
 public class AuthController {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtUtil jwtUtil;
+    private final ShardRouter shardRouter;
 
+    // Hashing runs on PasswordHashingService's pool and the database work after it on the task executor;
+    // the request thread is released meanwhile
     @PostMapping("/register")
-    public String register(@RequestBody User user) {
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        userRepository.save(user);
-        return "User registered successfully!";
+    public CompletableFuture<String> register(@RequestBody User user) {
+        return passwordHashingService.encode(user.getPassword()).thenApply(hash -> {
+            user.setPassword(hash);
+            userRepository.save(user);
+            shardRouter.assign(user);
+            return "User registered successfully!";
+        });
     }
 
     @PostMapping("/login")
-    public String login(@RequestBody User user) {
+    public CompletableFuture<String> login(@RequestBody User user) {
         User existingUser = userRepository.findByUsername(user.getUsername())
                 .orElseThrow(() -> new RuntimeException("User not found"));
-        if (passwordEncoder.matches(user.getPassword(), existingUser.getPassword())) {
+        String storedHash = existingUser.getPassword();
+        return passwordHashingService.matches(user.getPassword(), storedHash).thenApply(matches -> {
+            if (!matches) {
+                throw new RuntimeException("Invalid credentials");
+            }
+            // Hashes from before the cost was raised are replaced once the password is known
+            if (passwordHashingService.needsUpgrade(storedHash)) {
+                passwordHashingService.upgradeInBackground(user.getPassword(),
+                        hash -> userRepository.replacePassword(existingUser.getId(), storedHash, hash) == 1);
+            }
             return jwtUtil.generateToken(existingUser.getUsername());  // Use existingUser, not user
-        } else {
-            throw new RuntimeException("Invalid credentials");
-        }
+        });
     }
 
     @GetMapping("/me")
@@ -1,25 +1,42 @@
 package com.siddardha.digital_time_capsule.Controller;
+import com.siddardha.digital_time_capsule.Config.AttachmentUrlSigner;
 import com.siddardha.digital_time_capsule.DTO.CapsuleRequest;
 import com.siddardha.digital_time_capsule.DTO.CapsuleResponse;
 import com.siddardha.digital_time_capsule.DTO.UpdateCapsuleRequest;
 import com.siddardha.digital_time_capsule.Model.Capsule;
 import com.siddardha.digital_time_capsule.Model.User;
 import com.siddardha.digital_time_capsule.Repository.UserRepository;
+import com.siddardha.digital_time_capsule.Service.CapsuleExportService;
 import com.siddardha.digital_time_capsule.Service.CapsuleService;
 import com.siddardha.digital_time_capsule.Service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/capsules")
@@ -31,8 +48,19 @@ public class CapsuleController {
 
     private final FileStorageService fileStorageService;
 
+    private final CapsuleExportService capsuleExportService;
+
     private final UserRepository userRepository;
 
+    private final AttachmentUrlSigner attachmentUrlSigner;
+
+    @Value("${capsule.message.max-bytes:8388608}")
+    private long maxMessageBytes;
+
+    // 0 or less: no timeout
+    @Value("${export.request-timeout-ms:-1}")
+    private long exportTimeoutMs;
+
     @PostMapping("/create")
     public CapsuleResponse createCapsule(@RequestBody CapsuleRequest request, Authentication auth) {
         return capsuleService.createCapsule(request, auth.getName());
@@ -48,6 +76,21 @@ public class CapsuleController {
         return capsuleService.getLockedCapsules(auth.getName());
     }
 
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCapsules(Authentication auth, HttpServletRequest request) {
+        String username = auth.getName();
+        // A large account streams for longer than the default async timeout; only the export gets its own
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(exportTimeoutMs);
+        StreamingResponseBody body = out -> capsuleExportService.exportCapsules(username, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("capsules-" + username + ".zip", StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteCapsule(@PathVariable Long id, Authentication auth) {
         capsuleService.deleteCapsule(id, auth.getName());
@@ -91,6 +134,56 @@ public class CapsuleController {
         }
     }
 
+    // Streams the message body, for messages too large to be inlined in GET /{id}
+    @GetMapping(value = "/{id}/message", produces = "text/plain;charset=UTF-8")
+    public void getCapsuleMessage(@PathVariable Long id, Authentication auth, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain;charset=UTF-8");
+        capsuleService.writeMessageTo(id, auth.getName(), response.getOutputStream());
+    }
+
+    @PutMapping(value = "/{id}/message", consumes = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> replaceCapsuleMessage(@PathVariable Long id, Authentication auth,
+                                                        HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        if (length > maxMessageBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Message exceeds " + maxMessageBytes + " bytes");
+        }
+        if (length >= 0) {
+            capsuleService.replaceMessage(id, auth.getName(), request.getInputStream(), length);
+            return ResponseEntity.ok("Message updated successfully");
+        }
+        // Chunked upload without a length: spool to disk first, the database needs the size up front
+        Path spool = Files.createTempFile("capsule-message", ".txt");
+        try {
+            try (InputStream in = request.getInputStream(); OutputStream out = Files.newOutputStream(spool)) {
+                byte[] buffer = new byte[8192];
+                long total = 0;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    total += n;
+                    if (total > maxMessageBytes) {
+                        throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Message exceeds " + maxMessageBytes + " bytes");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            try (InputStream in = Files.newInputStream(spool)) {
+                capsuleService.replaceMessage(id, auth.getName(), in, Files.size(spool));
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+        return ResponseEntity.ok("Message updated successfully");
+    }
+
+    // Short-lived URL for the attachment of an unlocked capsule, served by /files without a JWT
+    @GetMapping("/{id}/attachment-url")
+    public Map<String, Object> getAttachmentUrl(@PathVariable Long id, Authentication auth) {
+        String filePath = capsuleService.getAttachmentPath(id, auth.getName());
+        AttachmentUrlSigner.SignedUrl signed = attachmentUrlSigner.sign(id, filePath);
+        return Map.of("url", signed.url(), "expiresAt", signed.expiresAt());
+    }
+
     // controller/CapsuleController.java
     @PostMapping("/create-with-file")
     public CapsuleResponse createCapsuleWithFile(
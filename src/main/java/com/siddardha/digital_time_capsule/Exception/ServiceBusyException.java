@@ -0,0 +1,15 @@
+package com.siddardha.digital_time_capsule.Exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+
+    public ServiceBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
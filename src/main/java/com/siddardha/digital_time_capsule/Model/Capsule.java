@@ -19,9 +19,12 @@ public class Capsule {
 
     private String title;
 
-    @Column(length = 5000)
+    // Body lives in CapsuleMessage; only set when a single capsule is read or written
+    @Transient
     private String message;
 
+    private long messageLength;
+
     private String filePath;
 
     private LocalDateTime unlockDateTime;
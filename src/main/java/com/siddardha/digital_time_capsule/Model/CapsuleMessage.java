@@ -0,0 +1,23 @@
+package com.siddardha.digital_time_capsule.Model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.sql.Blob;
+
+// UTF-8 message body of a capsule, kept out of the capsules row and stored as a large object
+@Entity
+@Table(name = "capsule_messages")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class CapsuleMessage {
+
+    @Id
+    @Column(name = "capsule_id")
+    private Long capsuleId;
+
+    @Lob
+    private Blob body;
+}
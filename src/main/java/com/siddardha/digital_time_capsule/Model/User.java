@@ -1,5 +1,6 @@
 package com.siddardha.digital_time_capsule.Model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -24,4 +25,8 @@ public class User {
     private String email;
 
     private String role = "USER"; // Default role
+
+    // Shard holding this user's capsules; assigned by ShardRouter after registration
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private int shardId;
 }
@@ -0,0 +1,7 @@
+package com.siddardha.digital_time_capsule.Repository;
+
+import com.siddardha.digital_time_capsule.Model.CapsuleMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface CapsuleMessageRepository extends JpaRepository<CapsuleMessage, Long> {
+}
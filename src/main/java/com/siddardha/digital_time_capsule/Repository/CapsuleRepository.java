@@ -3,24 +3,50 @@ package com.siddardha.digital_time_capsule.Repository;
 
 import com.siddardha.digital_time_capsule.Model.Capsule;
 import com.siddardha.digital_time_capsule.Model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface CapsuleRepository extends JpaRepository<Capsule, Long> {
     List<Capsule> findByUser(User user);
+
+    List<Capsule> findByUserAndIdGreaterThanOrderByIdAsc(User user, Long afterId, Pageable page);
+
     List<Capsule> findByUserAndUnlockDateTimeBefore(User user, LocalDateTime dateTime);
 
     List<Capsule> findByUserAndUnlockDateTimeAfter(User user, LocalDateTime now);
 
     Optional<Capsule> findByIdAndUser(Long id, User user);
 
+    List<Capsule> findByUnlockedFalseAndUnlockDateTimeBefore(LocalDateTime now);
+
+    List<Capsule> findByUnlockDateTimeBefore(LocalDateTime dateTime);
+
+    List<Capsule> findByUnlockDateTimeAfter(LocalDateTime dateTime);
+
+    @Query("SELECT c.user.username, COUNT(c) FROM Capsule c GROUP BY c.user.username")
+    List<Object[]> countPerUsername();
+
 
     @Query("SELECT c FROM Capsule c WHERE c.id = :id AND c.user.username = :username")
     Optional<Capsule> findByIdAndUser_Username(@Param("id") Long id, @Param("username") String username);
+
+    @Query("SELECT c FROM Capsule c WHERE c.unlocked = true AND c.unlockDateTime < :cutoff " +
+            "AND c.filePath IS NOT NULL AND c.id > :afterId ORDER BY c.id")
+    List<Capsule> findArchivableAfter(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") Long afterId, Pageable page);
+
+    @Query("SELECT c.filePath FROM Capsule c WHERE c.filePath IN :filePaths")
+    List<String> findReferencedFilePaths(@Param("filePaths") Collection<String> filePaths);
+
+    // Stored paths whose last segment is one of fileNames, whatever directory they were stored under
+    @Query(value = "SELECT file_path FROM capsules WHERE file_path IS NOT NULL " +
+            "AND regexp_replace(file_path, '^.*[/\\\\]', '') IN (:fileNames)", nativeQuery = true)
+    List<String> findFilePathsByFileName(@Param("fileNames") Collection<String> fileNames);
 }
 
@@ -2,6 +2,10 @@ package com.siddardha.digital_time_capsule.Repository;
 
 import com.siddardha.digital_time_capsule.Model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -9,4 +13,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     // Find by email (unique)
     Optional<User> findByEmail(String email);
-}
\ No newline at end of file
+
+    // Replaces the hash only if it is still the one that was checked, so a concurrent password change wins
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :newPassword WHERE u.id = :id AND u.password = :oldPassword")
+    int replacePassword(@Param("id") Long id, @Param("oldPassword") String oldPassword, @Param("newPassword") String newPassword);
+}
@@ -10,42 +10,43 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.*;
 
+// Users come from the directory on shard 0; capsule queries run on all shards in parallel
 @Service
 @RequiredArgsConstructor
 public class AdminService {
 
     private final UserRepository userRepository;
     private final CapsuleRepository capsuleRepository;
+    private final ShardRouter shardRouter;
 
     public List<User> getAllUsers() {
-        return userRepository.findAll();
+        return shardRouter.inShard(0, true, userRepository::findAll);
     }
 
     public List<Capsule> getAllCapsules() {
-        return capsuleRepository.findAll();
+        return shardRouter.fanOutAll(capsuleRepository::findAll);
     }
 
     public Map<String, Long> getCapsuleCountPerUser() {
         Map<String, Long> stats = new HashMap<>();
-        List<User> users = userRepository.findAll();
-        for (User user : users) {
-            long count = capsuleRepository.findByUser(user).size();
-            stats.put(user.getUsername(), count);
+        for (User user : getAllUsers()) {
+            stats.put(user.getUsername(), 0L);
+        }
+        for (List<Object[]> counts : shardRouter.fanOut(capsuleRepository::countPerUsername)) {
+            for (Object[] count : counts) {
+                stats.merge((String) count[0], (Long) count[1], Long::sum);
+            }
         }
         return stats;
     }
 
     public List<Capsule> getUnlockedCapsules() {
-        return capsuleRepository.findAll().stream()
-                .filter(c-> c.getUnlockDateTime() != null)
-                .filter(c -> c.getUnlockDateTime().isBefore(java.time.LocalDateTime.now()))
-                .toList();
+        LocalDateTime now = LocalDateTime.now();
+        return shardRouter.fanOutAll(() -> capsuleRepository.findByUnlockDateTimeBefore(now));
     }
 
     public List<Capsule> getLockedCapsules() {
-        return capsuleRepository.findAll().stream()
-                .filter(c -> c.getUnlockDateTime() != null)
-                .filter(c -> c.getUnlockDateTime().isAfter(LocalDateTime.now()))
-                .toList();
+        LocalDateTime now = LocalDateTime.now();
+        return shardRouter.fanOutAll(() -> capsuleRepository.findByUnlockDateTimeAfter(now));
     }
-}
\ No newline at end of file
+}
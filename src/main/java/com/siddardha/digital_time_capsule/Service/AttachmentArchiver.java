@@ -0,0 +1,131 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Config.ShardContext;
+import com.siddardha.digital_time_capsule.Model.Capsule;
+import com.siddardha.digital_time_capsule.Repository.CapsuleRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves attachments of capsules that were unlocked long ago out of the upload
+ * directory into {@link AttachmentPackStore} segments, and compacts segments
+ * whose entries mostly belong to deleted capsules.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AttachmentArchiver {
+
+    private final CapsuleRepository capsuleRepository;
+    private final AttachmentPackStore packStore;
+    private final ShardRouter shardRouter;
+
+    @Value("${file.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.archive.min-age-days:90}")
+    private long minAgeDays;
+
+    @Value("${file.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.archive.compaction-threshold:0.5}")
+    private double compactionThreshold;
+
+    @Scheduled(cron = "${file.archive.cron:0 30 3 * * ?}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(minAgeDays);
+        int archived = 0;
+        for (int shard = 0; shard < shardRouter.shardCount(); shard++) {
+            try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+                archived += archiveShard(cutoff);
+            }
+        }
+        log.info("Archived {} attachments unlocked before {}", archived, cutoff);
+
+        compact();
+    }
+
+    private int archiveShard(LocalDateTime cutoff) {
+        long afterId = 0;
+        int archived = 0;
+        List<Capsule> batch;
+        do {
+            batch = capsuleRepository.findArchivableAfter(cutoff, afterId, PageRequest.of(0, batchSize));
+            for (Capsule capsule : batch) {
+                afterId = capsule.getId();
+                try {
+                    if (archiveFile(capsule.getFilePath())) {
+                        archived++;
+                    }
+                } catch (IOException e) {
+                    log.error("Error archiving attachment of capsule ID {}: {}", capsule.getId(), e.getMessage());
+                }
+            }
+        } while (batch.size() == batchSize);
+        return archived;
+    }
+
+    public void compact() {
+        for (int segment : packStore.segments()) {
+            if (segment == packStore.activeSegment()) {
+                continue;
+            }
+            try {
+                long size = packStore.segmentSize(segment);
+                Set<String> referenced = referenced(packStore.keys(segment));
+                long live = packStore.liveBytes(segment, referenced::contains);
+                if (size > 0 && (double) live / size < compactionThreshold) {
+                    long reclaimed = packStore.compact(segment, referenced::contains);
+                    log.info("Compacted pack segment {}, reclaimed {} bytes", segment, reclaimed);
+                }
+            } catch (IOException e) {
+                log.error("Error compacting pack segment {}: {}", segment, e.getMessage());
+            }
+        }
+    }
+
+    // The keys some capsule on any shard still references, looked up batchSize keys per query
+    private Set<String> referenced(Collection<String> keys) {
+        List<String> all = new ArrayList<>(keys);
+        Set<String> referenced = new HashSet<>();
+        for (int from = 0; from < all.size(); from += batchSize) {
+            List<String> chunk = all.subList(from, Math.min(from + batchSize, all.size()));
+            referenced.addAll(shardRouter.withoutMoves(() -> shardRouter.fanOutAll(() -> capsuleRepository.findReferencedFilePaths(chunk))));
+        }
+        return referenced;
+    }
+
+    private boolean archiveFile(String filePath) throws IOException {
+        Path hot = Paths.get(filePath);
+        if (packStore.contains(filePath)) {
+            // Left behind by a run that stopped between append and delete
+            Files.deleteIfExists(hot);
+            return false;
+        }
+        if (!Files.isRegularFile(hot)) {
+            return false;
+        }
+        packStore.append(filePath, hot);
+        Files.delete(hot);
+        return true;
+    }
+}
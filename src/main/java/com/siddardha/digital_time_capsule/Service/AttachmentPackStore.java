@@ -0,0 +1,359 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Cold tier for attachments: files are appended to large pack segments
+ * ({@code segment-NNNNN.pack}) and located through a per-segment offset index
+ * ({@code segment-NNNNN.idx}, one {@code offset<TAB>length<TAB>key} line per entry).
+ * Entries are keyed by the same path string that is stored in {@code Capsule.filePath},
+ * so callers never need to know which tier a file lives in.
+ */
+@Service
+@Slf4j
+public class AttachmentPackStore {
+
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    @Value("${file.upload-dir}")
+    private String uploadDir;
+
+    @Value("${file.archive.segment-max-bytes:1073741824}")
+    private long segmentMaxBytes;
+
+    private Path packDir;
+
+    private final Map<String, PackEntry> index = new ConcurrentHashMap<>();
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+
+    private int activeSegment;
+
+    public record PackEntry(int segment, long offset, long length) {
+    }
+
+    @PostConstruct
+    public void loadIndex() throws IOException {
+        // Segments are mapped whole and sliced with int offsets
+        if (segmentMaxBytes <= 0 || segmentMaxBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("file.archive.segment-max-bytes must be between 1 and "
+                    + Integer.MAX_VALUE + ", was " + segmentMaxBytes);
+        }
+        packDir = Paths.get(uploadDir, "packs");
+        Files.createDirectories(packDir);
+        for (int segment : listSegments()) {
+            readIndex(segment).forEach(index::put);
+            activeSegment = Math.max(activeSegment, segment);
+        }
+        dropPartialIndexLine(activeSegment);
+        log.info("Loaded {} packed attachments from {}", index.size(), packDir);
+    }
+
+    @PreDestroy
+    public void close() {
+        mappedSegments.clear();
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    public long size(String key) {
+        PackEntry entry = index.get(key);
+        if (entry == null) {
+            throw new NoSuchElementException("Attachment is not packed: " + key);
+        }
+        return entry.length();
+    }
+
+    /**
+     * Returns a read-only view of a packed file backed by the memory-mapped segment,
+     * so reads do not copy the data onto the heap.
+     */
+    public ByteBuffer read(String key) throws IOException {
+        PackEntry entry = index.get(key);
+        if (entry == null) {
+            throw new NoSuchFileException(key);
+        }
+        MappedByteBuffer segment;
+        try {
+            segment = mapSegment(entry.segment(), entry.offset() + entry.length());
+        } catch (NoSuchFileException e) {
+            // The segment was compacted away between the index lookup and the mapping.
+            entry = index.get(key);
+            if (entry == null) {
+                throw e;
+            }
+            segment = mapSegment(entry.segment(), entry.offset() + entry.length());
+        }
+        return segment.slice((int) entry.offset(), (int) entry.length()).asReadOnlyBuffer();
+    }
+
+    public InputStream openStream(String key) throws IOException {
+        return new ByteBufferInputStream(read(key));
+    }
+
+    /**
+     * Appends a hot file to the active segment. The index line is written and
+     * forced to disk only after the data, so a crash never leaves an entry
+     * pointing at bytes that were not persisted.
+     */
+    public synchronized void append(String key, Path source) throws IOException {
+        long length = Files.size(source);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Attachment too large to pack: " + source);
+        }
+        if (segmentSize(activeSegment) + length > segmentMaxBytes && segmentSize(activeSegment) > 0) {
+            activeSegment++;
+        }
+        int segment = activeSegment;
+        long offset;
+        try (FileChannel out = FileChannel.open(packPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            offset = out.size();
+            long copied = 0;
+            while (copied < length) {
+                copied += in.transferTo(copied, length - copied, out);
+            }
+            out.force(false);
+        }
+        appendIndexLine(segment, offset, length, key);
+        if (offset == 0) {
+            forceDirectory();
+        }
+        index.put(key, new PackEntry(segment, offset, length));
+        mappedSegments.remove(segment);
+    }
+
+    public Set<Integer> segments() {
+        return new TreeSet<>(listSegments());
+    }
+
+    public int activeSegment() {
+        return activeSegment;
+    }
+
+    /**
+     * Copies the entries of a sealed segment accepted by {@code isLive} into a fresh
+     * segment and drops the old one. Survivors get a new segment number instead of
+     * being rewritten in place, so a reader that already resolved an old offset keeps
+     * reading consistent bytes from its mapping.
+     *
+     * @return number of bytes reclaimed
+     */
+    public synchronized long compact(int segment, Predicate<String> isLive) throws IOException {
+        if (segment == activeSegment) {
+            throw new IllegalArgumentException("Cannot compact the active segment " + segment);
+        }
+        Map<String, PackEntry> entries = readIndex(segment);
+        long before = segmentSize(segment);
+
+        int target = Math.max(activeSegment, Collections.max(listSegments())) + 1;
+        Map<String, PackEntry> kept = new LinkedHashMap<>();
+        StringBuilder lines = new StringBuilder();
+        try (FileChannel in = FileChannel.open(packPath(segment), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(packPath(target), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             FileChannel idx = FileChannel.open(indexPath(target), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (Map.Entry<String, PackEntry> e : entries.entrySet()) {
+                if (!isLive.test(e.getKey())) {
+                    continue;
+                }
+                PackEntry old = e.getValue();
+                long offset = out.size();
+                long copied = 0;
+                while (copied < old.length()) {
+                    copied += in.transferTo(old.offset() + copied, old.length() - copied, out);
+                }
+                lines.append(offset).append('\t').append(old.length()).append('\t').append(e.getKey()).append(System.lineSeparator());
+                kept.put(e.getKey(), new PackEntry(target, offset, old.length()));
+            }
+            // Same order as append: data, then index, then the directory entries of both,
+            // all durable before the old segment is deleted
+            out.force(true);
+            ByteBuffer index = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (index.hasRemaining()) {
+                idx.write(index);
+            }
+            idx.force(true);
+        }
+        forceDirectory();
+        // Later appends must not land in the sealed compaction output.
+        activeSegment = target + 1;
+
+        index.putAll(kept);
+        entries.forEach(index::remove);
+        Files.deleteIfExists(indexPath(segment));
+        Files.deleteIfExists(packPath(segment));
+        mappedSegments.remove(segment);
+        if (kept.isEmpty()) {
+            Files.deleteIfExists(packPath(target));
+            Files.deleteIfExists(indexPath(target));
+        }
+        forceDirectory();
+        return before - kept.values().stream().mapToLong(PackEntry::length).sum();
+    }
+
+    /**
+     * Live bytes per segment according to {@code isLive}, used to decide which
+     * segments are worth compacting.
+     */
+    public long liveBytes(int segment, Predicate<String> isLive) throws IOException {
+        return readIndex(segment).entrySet().stream()
+                .filter(e -> isLive.test(e.getKey()))
+                .mapToLong(e -> e.getValue().length())
+                .sum();
+    }
+
+    public Set<String> keys(int segment) throws IOException {
+        return readIndex(segment).keySet();
+    }
+
+    public long segmentSize(int segment) throws IOException {
+        Path pack = packPath(segment);
+        return Files.exists(pack) ? Files.size(pack) : 0;
+    }
+
+    private MappedByteBuffer mapSegment(int segment, long requiredSize) throws IOException {
+        MappedByteBuffer mapped = mappedSegments.get(segment);
+        if (mapped != null && mapped.capacity() >= requiredSize) {
+            return mapped;
+        }
+        try (FileChannel channel = FileChannel.open(packPath(segment), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mappedSegments.put(segment, mapped);
+        return mapped;
+    }
+
+    private Map<String, PackEntry> readIndex(int segment) throws IOException {
+        Map<String, PackEntry> entries = new LinkedHashMap<>();
+        Path idx = indexPath(segment);
+        if (!Files.exists(idx)) {
+            return entries;
+        }
+        long packSize = segmentSize(segment);
+        for (String line : Files.readAllLines(idx, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length < 3) {
+                continue;
+            }
+            long offset = Long.parseLong(parts[0]);
+            long length = Long.parseLong(parts[1]);
+            if (offset + length > packSize) {
+                log.warn("Ignoring truncated pack entry {} in segment {}", parts[2], segment);
+                continue;
+            }
+            entries.put(parts[2], new PackEntry(segment, offset, length));
+        }
+        return entries;
+    }
+
+    // A crash halfway through appendIndexLine leaves a line without its newline; cut it off
+    // so the next append does not continue it
+    private void dropPartialIndexLine(int segment) throws IOException {
+        Path idx = indexPath(segment);
+        if (!Files.exists(idx)) {
+            return;
+        }
+        byte[] content = Files.readAllBytes(idx);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            try (FileChannel channel = FileChannel.open(idx, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+        }
+    }
+
+    private void appendIndexLine(int segment, long offset, long length, String key) throws IOException {
+        byte[] line = (offset + "\t" + length + "\t" + key + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        try (FileChannel idx = FileChannel.open(indexPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            idx.write(ByteBuffer.wrap(line));
+            idx.force(false);
+        }
+    }
+
+    // Makes created and deleted segment files durable; not every platform can open a directory
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(packDir, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync {}: {}", packDir, e.getMessage());
+        }
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(packDir, "segment-*" + PACK_SUFFIX)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                segments.add(Integer.parseInt(name.substring("segment-".length(), name.length() - PACK_SUFFIX.length())));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private Path packPath(int segment) {
+        return packDir.resolve(segmentName(segment) + PACK_SUFFIX);
+    }
+
+    private Path indexPath(int segment) {
+        return packDir.resolve(segmentName(segment) + INDEX_SUFFIX);
+    }
+
+    private static String segmentName(int segment) {
+        return String.format("segment-%05d", segment);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.siddardha.digital_time_capsule.Config.ShardContext;
+import com.siddardha.digital_time_capsule.Model.Capsule;
+import com.siddardha.digital_time_capsule.Model.User;
+import com.siddardha.digital_time_capsule.Repository.CapsuleRepository;
+import com.siddardha.digital_time_capsule.Repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes every capsule a user owns as a ZIP straight to the response stream:
+ * {@code capsules/<id>/capsule.json}, {@code message.txt} and the attachment,
+ * one page of capsules at a time so memory use does not depend on the size of
+ * the account.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CapsuleExportService {
+
+    // Formats that are already compressed and only waste CPU when deflated again
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "mp3", "m4a", "aac", "ogg",
+            "mp4", "mov", "m4v", "webm", "avi", "mkv", "zip", "gz", "tgz", "7z", "rar", "docx", "xlsx", "pptx");
+
+    private final CapsuleRepository capsuleRepository;
+    private final UserRepository userRepository;
+    private final FileStorageService fileStorageService;
+    private final CapsuleMessageService capsuleMessageService;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+
+    @Value("${export.page-size:100}")
+    private int pageSize;
+
+    public void exportCapsules(String username, OutputStream out) throws IOException {
+        try (ShardContext.Scope ignored = ShardContext.use(shardRouter.shardOf(username))) {
+            writeZip(username, out);
+        }
+    }
+
+    private void writeZip(String username, OutputStream out) throws IOException {
+        User user = userRepository.findByUsername(username).orElseThrow();
+        ObjectWriter writer = objectMapper.writerWithDefaultPrettyPrinter()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        ZipOutputStream zip = new ZipOutputStream(out);
+        long afterId = 0;
+        List<Capsule> page;
+        do {
+            page = capsuleRepository.findByUserAndIdGreaterThanOrderByIdAsc(user, afterId, PageRequest.of(0, pageSize));
+            for (Capsule capsule : page) {
+                afterId = capsule.getId();
+                String dir = "capsules/" + capsule.getId() + "/";
+
+                zip.putNextEntry(new ZipEntry(dir + "capsule.json"));
+                writer.writeValue(zip, toMetadata(capsule));
+                zip.closeEntry();
+
+                if (capsule.getMessageLength() > 0) {
+                    zip.putNextEntry(new ZipEntry(dir + "message.txt"));
+                    capsuleMessageService.copyTo(capsule.getId(), zip);
+                    zip.closeEntry();
+                }
+                if (capsule.getFilePath() != null) {
+                    writeAttachment(zip, dir, capsule);
+                }
+                zip.flush();
+            }
+        } while (page.size() == pageSize);
+        zip.finish();
+        zip.flush();
+    }
+
+    private Map<String, Object> toMetadata(Capsule capsule) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("id", capsule.getId());
+        metadata.put("title", capsule.getTitle());
+        metadata.put("messageLength", capsule.getMessageLength());
+        metadata.put("unlockDateTime", capsule.getUnlockDateTime() != null ? capsule.getUnlockDateTime().toString() : null);
+        metadata.put("unlocked", capsule.isUnlocked());
+        metadata.put("attachment", capsule.getFilePath() != null ? attachmentName(capsule.getFilePath()) : null);
+        return metadata;
+    }
+
+    private void writeAttachment(ZipOutputStream zip, String dir, Capsule capsule) throws IOException {
+        String filePath = capsule.getFilePath();
+        if (!fileStorageService.exists(filePath)) {
+            log.warn("Skipping missing attachment of capsule ID {}: {}", capsule.getId(), filePath);
+            return;
+        }
+        String name = attachmentName(filePath);
+        ZipEntry entry = new ZipEntry(dir + name);
+        if (isCompressed(name)) {
+            // STORED entries need size and CRC up front; compute them with a streaming pass over the file
+            long size = fileStorageService.fileSize(filePath);
+            CRC32 crc = new CRC32();
+            try (InputStream in = fileStorageService.openFile(filePath)) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        try (InputStream in = fileStorageService.openFile(filePath)) {
+            in.transferTo(zip);
+        }
+        zip.closeEntry();
+    }
+
+    private static String attachmentName(String filePath) {
+        return Paths.get(filePath).getFileName().toString();
+    }
+
+    private static boolean isCompressed(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,85 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Model.Capsule;
+import com.siddardha.digital_time_capsule.Model.CapsuleMessage;
+import com.siddardha.digital_time_capsule.Repository.CapsuleMessageRepository;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.jdbc.BlobProxy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * Reads and writes capsule bodies. Bodies are streamed to and from the database
+ * in chunks, so even multi-megabyte messages never sit on the heap as one String
+ * unless a caller asks for {@link #readString}.
+ */
+@Service
+@RequiredArgsConstructor
+public class CapsuleMessageService {
+
+    private final CapsuleMessageRepository capsuleMessageRepository;
+
+    @Transactional
+    public void write(Capsule capsule, String message) {
+        if (message == null) {
+            delete(capsule);
+            return;
+        }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        write(capsule, new ByteArrayInputStream(bytes), bytes.length);
+    }
+
+    @Transactional
+    public void write(Capsule capsule, InputStream utf8, long length) {
+        CapsuleMessage message = capsuleMessageRepository.findById(capsule.getId())
+                .orElseGet(() -> new CapsuleMessage(capsule.getId(), null));
+        message.setBody(BlobProxy.generateProxy(utf8, length));
+        capsuleMessageRepository.save(message);
+        capsule.setMessageLength(length);
+    }
+
+    @Transactional
+    public void delete(Capsule capsule) {
+        capsuleMessageRepository.deleteById(capsule.getId());
+        capsule.setMessageLength(0);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<String> readString(Long capsuleId) {
+        return capsuleMessageRepository.findById(capsuleId)
+                .filter(message -> message.getBody() != null)
+                .map(message -> {
+                    try (InputStream in = message.getBody().getBinaryStream()) {
+                        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Could not read message of capsule " + capsuleId, e);
+                    }
+                });
+    }
+
+    // Copies the body to the stream without closing it; returns false if the capsule has no body
+    @Transactional(readOnly = true)
+    public boolean copyTo(Long capsuleId, OutputStream out) throws IOException {
+        Optional<CapsuleMessage> message = capsuleMessageRepository.findById(capsuleId);
+        if (message.isEmpty() || message.get().getBody() == null) {
+            return false;
+        }
+        try (InputStream in = message.get().getBody().getBinaryStream()) {
+            in.transferTo(out);
+        } catch (SQLException e) {
+            throw new IOException("Could not read message of capsule " + capsuleId, e);
+        }
+        return true;
+    }
+}
@@ -18,32 +18,49 @@ import java.util.List;
 public class CapsuleScheduler {
 
     private final CapsuleRepository capsuleRepository;
+    private final ShardRouter shardRouter;
 
     @Autowired
     private final EmailService emailService;
 
+    // Only the scan fans out; unlocking and mail delivery stay on the scheduler thread,
+    // so other fan-outs never wait for the mail server
     @Scheduled(cron = "0 * * * * ?")
     public void unlockCapsules() {
-        List<Capsule> capsules = capsuleRepository.findAll();
+        LocalDateTime now = LocalDateTime.now();
+        List<Capsule> due = shardRouter.fanOutAll(() -> capsuleRepository.findByUnlockedFalseAndUnlockDateTimeBefore(now));
+        unlockDueCapsules(due);
+    }
+
+    private int unlockDueCapsules(List<Capsule> capsules) {
+        int unlocked = 0;
 
         for (Capsule capsule : capsules) {
             try {
-                if (capsule.getUnlockDateTime() != null &&
-                        !capsule.isUnlocked() &&
-                        capsule.getUnlockDateTime().isBefore(LocalDateTime.now())) {
-
-                    capsule.setUnlocked(true);
-                    capsuleRepository.save(capsule);
+                // Unlocked through the owner's shard, so a capsule whose user is being moved is unlocked only once
+                boolean changed = shardRouter.inUserShard(capsule.getUser().getUsername(), false, user ->
+                        capsuleRepository.findByIdAndUser(capsule.getId(), user)
+                                .filter(current -> !current.isUnlocked())
+                                .map(current -> {
+                                    current.setUnlocked(true);
+                                    capsuleRepository.save(current);
+                                    return true;
+                                })
+                                .orElse(false));
+                if (!changed) {
+                    continue;
+                }
 
-                    // Send email
-                    String email = capsule.getUser().getEmail();
-                    emailService.sendUnlockNotification(email, capsule.getTitle());
+                // Send email
+                String email = capsule.getUser().getEmail();
+                emailService.sendUnlockNotification(email, capsule.getTitle());
+                unlocked++;
 
-                    log.info("Capsule unlocked and email sent: {}", capsule.getTitle());
-                }
+                log.info("Capsule unlocked and email sent: {}", capsule.getTitle());
             } catch (Exception e) {
                 log.error("Error processing capsule ID {}: {}", capsule.getId(), e.getMessage());
             }
         }
+        return unlocked;
     }
-}
\ No newline at end of file
+}
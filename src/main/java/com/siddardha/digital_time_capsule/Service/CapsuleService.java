@@ -6,30 +6,42 @@ import com.siddardha.digital_time_capsule.Exception.ResourceNotFoundException;
 import com.siddardha.digital_time_capsule.Model.Capsule;
 import com.siddardha.digital_time_capsule.Model.User;
 import com.siddardha.digital_time_capsule.Repository.CapsuleRepository;
-import com.siddardha.digital_time_capsule.Repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.stream.Collectors;
 
+// Every call runs in a transaction on the shard that owns the user's capsules
 @Service
 @RequiredArgsConstructor
 public class CapsuleService {
 
     private final CapsuleRepository capsuleRepository;
-    private final UserRepository userRepository;
+    private final CapsuleMessageService capsuleMessageService;
+    private final ShardRouter shardRouter;
 
-    public CapsuleResponse createCapsule(CapsuleRequest request, String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    @Value("${capsule.message.inline-max-bytes:262144}")
+    private long inlineMessageMaxBytes;
+
+    @Value("${capsule.message.max-bytes:8388608}")
+    private long maxMessageBytes;
 
+    public CapsuleResponse createCapsule(CapsuleRequest request, String username) {
+        checkMessageSize(request.getMessage());
         // Validate unlock date is in the future
         LocalDateTime unlockDateTime = request.getUnlockDateTime()  != null
                 ? request.getUnlockDateTime()
@@ -37,13 +49,16 @@ public class CapsuleService {
         if (unlockDateTime.isBefore(LocalDateTime.now())) {
             throw new IllegalArgumentException("Unlock date and time must be in the future");
         }
-        Capsule capsule = new Capsule();
-        capsule.setTitle(request.getTitle());
-        capsule.setMessage(request.getMessage());
-        capsule.setUnlockDateTime(unlockDateTime);
-        capsule.setUser(user);
-        capsule.setUnlocked(false);
-        capsuleRepository.save(capsule);
+        Capsule capsule = shardRouter.inUserShard(username, false, user -> {
+            Capsule created = new Capsule();
+            created.setTitle(request.getTitle());
+            created.setUnlockDateTime(unlockDateTime);
+            created.setUser(user);
+            created.setUnlocked(false);
+            capsuleRepository.save(created);
+            capsuleMessageService.write(created, request.getMessage());
+            return created;
+        });
 
         CapsuleResponse response = new CapsuleResponse();
         response.setId(capsule.getId());
@@ -55,25 +70,78 @@ public class CapsuleService {
     }
 
     public Capsule getCapsuleByIdAndUser(Long id, String username) {
-        return capsuleRepository.findByIdAndUser_Username(id, username)
-                .orElseThrow(() -> new ResourceNotFoundException("Capsule not found with id: " + id));
+        return shardRouter.inUserShard(username, true, user -> {
+            Capsule capsule = capsuleRepository.findByIdAndUser(id, user)
+                    .orElseThrow(() -> new ResourceNotFoundException("Capsule not found with id: " + id));
+            // Large bodies are left out and read through /{id}/message instead
+            if (capsule.getMessageLength() > 0 && capsule.getMessageLength() <= inlineMessageMaxBytes) {
+                capsuleMessageService.readString(id).ifPresent(capsule::setMessage);
+            }
+            return capsule;
+        });
+    }
+
+    public boolean writeMessageTo(Long id, String username, OutputStream out) throws IOException {
+        try {
+            return shardRouter.inUserShard(username, true, user -> {
+                Capsule capsule = capsuleRepository.findByIdAndUser(id, user)
+                        .orElseThrow(() -> new ResourceNotFoundException("Capsule not found with id: " + id));
+                try {
+                    return capsuleMessageService.copyTo(capsule.getId(), out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Stored path of the attachment of an unlocked capsule, to be signed into an attachment URL
+    public String getAttachmentPath(Long id, String username) {
+        return shardRouter.inUserShard(username, true, user -> {
+            Capsule capsule = capsuleRepository.findByIdAndUser(id, user)
+                    .orElseThrow(() -> new ResourceNotFoundException("Capsule not found with id: " + id));
+            if (capsule.getUnlockDateTime().isAfter(LocalDateTime.now())) {
+                throw new AccessDeniedException("Capsule is still locked");
+            }
+            if (capsule.getFilePath() == null) {
+                throw new ResourceNotFoundException("Capsule has no attachment: " + id);
+            }
+            return capsule.getFilePath();
+        });
+    }
+
+    public void replaceMessage(Long id, String username, InputStream utf8, long length) {
+        shardRouter.inUserShard(username, false, user -> {
+            Capsule capsule = capsuleRepository.findByIdAndUser(id, user)
+                    .orElseThrow(() -> new ResourceNotFoundException("Capsule not found with id: " + id));
+            if (capsule.isUnlocked()) {
+                throw new IllegalStateException("Cannot update an unlocked capsule");
+            }
+            capsuleMessageService.write(capsule, utf8, length);
+            return capsuleRepository.save(capsule);
+        });
     }
 
 
     public CapsuleResponse createCapsuleWithFile(CapsuleRequest request, String username, String filePath) {
-        User user = userRepository.findByUsername(username).orElseThrow();
-        Capsule capsule = new Capsule();
-        capsule.setTitle(request.getTitle());
-        capsule.setMessage(request.getMessage());
+        checkMessageSize(request.getMessage());
         // Set unlockDateTime to 1 year from now if not provided in request
         LocalDateTime unlockDateTime = request.getUnlockDateTime() != null
                 ? request.getUnlockDateTime()
                 : LocalDateTime.now().plusYears(1);
-        capsule.setUnlockDateTime(unlockDateTime);
-        capsule.setUser(user);
-        capsule.setUnlocked(false);
-        capsule.setFilePath(filePath);
-        capsuleRepository.save(capsule);
+        Capsule capsule = shardRouter.inUserShard(username, false, user -> {
+            Capsule created = new Capsule();
+            created.setTitle(request.getTitle());
+            created.setUnlockDateTime(unlockDateTime);
+            created.setUser(user);
+            created.setUnlocked(false);
+            created.setFilePath(filePath);
+            capsuleRepository.save(created);
+            capsuleMessageService.write(created, request.getMessage());
+            return created;
+        });
 
         CapsuleResponse response = new CapsuleResponse();
         response.setId(capsule.getId());
@@ -85,14 +153,13 @@ public class CapsuleService {
     }
 
     public List<CapsuleResponse> getUnlockedCapsules(String username) {
-        User user = userRepository.findByUsername(username).orElseThrow();
-        List<Capsule> capsules = capsuleRepository.findByUserAndUnlockDateTimeBefore(user, LocalDateTime.now());
+        List<Capsule> capsules = shardRouter.inUserShard(username, true,
+                user -> capsuleRepository.findByUserAndUnlockDateTimeBefore(user, LocalDateTime.now()));
 
         return capsules.stream().map(capsule -> {
             CapsuleResponse response = new CapsuleResponse();
             response.setId(capsule.getId());
             response.setTitle(capsule.getTitle());
-            response.setMessage(capsule.getMessage());
             response.setUnlocked(true);
             response.setUnlockDateTime(capsule.getUnlockDateTime().toString());
             return response;
@@ -100,14 +167,13 @@ public class CapsuleService {
     }
 
     public List<CapsuleResponse> getLockedCapsules(String name) {
-        User user = userRepository.findByUsername(name).orElseThrow();
-        List<Capsule> capsules = capsuleRepository.findByUserAndUnlockDateTimeAfter(user, LocalDateTime.now());
+        List<Capsule> capsules = shardRouter.inUserShard(name, true,
+                user -> capsuleRepository.findByUserAndUnlockDateTimeAfter(user, LocalDateTime.now()));
 
         return capsules.stream().map(capsule -> {
             CapsuleResponse response = new CapsuleResponse();
             response.setId(capsule.getId());
             response.setTitle(capsule.getTitle());
-            response.setMessage(capsule.getMessage());
             response.setUnlocked(false);
             response.setUnlockDateTime(capsule.getUnlockDateTime().toString());
             return response;
@@ -115,40 +181,54 @@ public class CapsuleService {
     }
 
 
-    @Transactional
     public void deleteCapsule(Long id, String username) {
-        Capsule capsule = capsuleRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException("Capsule not found"));
-
-        if (!capsule.getUser().getUsername().equals(username)) {
-            throw new AccessDeniedException("You are not authorized to delete this capsule");
-        }
-
-        capsuleRepository.delete(capsule);
+        shardRouter.inUserShard(username, false, user -> {
+            Capsule capsule = capsuleRepository.findById(id)
+                    .orElseThrow(() -> new EntityNotFoundException("Capsule not found"));
+
+            if (!capsule.getUser().getUsername().equals(username)) {
+                throw new AccessDeniedException("You are not authorized to delete this capsule");
+            }
+
+            capsuleMessageService.delete(capsule);
+            capsuleRepository.delete(capsule);
+            return capsule;
+        });
     }
 
     // Add this method to your existing CapsuleService class
-    @Transactional
     public Capsule updateCapsule(Long id, UpdateCapsuleRequest updateRequest, User user) {
-        Capsule capsule = (Capsule) capsuleRepository.findByIdAndUser(id, user)
-                .orElseThrow(() -> new EntityNotFoundException("Capsule not found or you don't have permission to update it"));
-
-        // Only allow updates to locked capsules
-        if (capsule.isUnlocked()) {
-            throw new IllegalStateException("Cannot update an unlocked capsule");
-        }
+        checkMessageSize(updateRequest.getMessage());
+        return shardRouter.inUserShard(user.getUsername(), false, owner -> {
+            Capsule capsule = (Capsule) capsuleRepository.findByIdAndUser(id, owner)
+                    .orElseThrow(() -> new EntityNotFoundException("Capsule not found or you don't have permission to update it"));
+
+            // Only allow updates to locked capsules
+            if (capsule.isUnlocked()) {
+                throw new IllegalStateException("Cannot update an unlocked capsule");
+            }
+
+            // Update fields if they're provided in the request
+            if (updateRequest.getTitle() != null) {
+                capsule.setTitle(updateRequest.getTitle());
+            }
+            if (updateRequest.getMessage() != null) {
+                capsuleMessageService.write(capsule, updateRequest.getMessage());
+                capsule.setMessage(updateRequest.getMessage());
+            }
+            if (updateRequest.getUnlockDateTime() != null) {
+                capsule.setUnlockDateTime(updateRequest.getUnlockDateTime());
+            }
+
+            return capsuleRepository.save(capsule);
+        });
+    }
 
-        // Update fields if they're provided in the request
-        if (updateRequest.getTitle() != null) {
-            capsule.setTitle(updateRequest.getTitle());
-        }
-        if (updateRequest.getMessage() != null) {
-            capsule.setMessage(updateRequest.getMessage());
+    // Same limit as PUT /{id}/message; a char never takes more than 3 bytes in UTF-8
+    private void checkMessageSize(String message) {
+        if (message != null && (long) message.length() * 3 > maxMessageBytes
+                && message.getBytes(StandardCharsets.UTF_8).length > maxMessageBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Message exceeds " + maxMessageBytes + " bytes");
         }
-        if (updateRequest.getUnlockDateTime() != null) {
-            capsule.setUnlockDateTime(updateRequest.getUnlockDateTime());
-        }
-
-        return capsuleRepository.save(capsule);
     }
-}
\ No newline at end of file
+}
@@ -1,23 +1,65 @@
 package com.siddardha.digital_time_capsule.Service;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
 
 @Service
+@RequiredArgsConstructor
 public class FileStorageService {
 
+    private final AttachmentPackStore packStore;
+
     @Value("${file.upload-dir}")
     private String uploadDir;
 
     public String storeFile(MultipartFile file) throws IOException {
         String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-        Path filePath = Paths.get(uploadDir + File.separator + fileName);
+        Path filePath = storedPath(fileName);
         Files.createDirectories(filePath.getParent());
         Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
         return filePath.toString();
     }
+
+    // Path of a file in the upload directory, in the form that is stored in Capsule.filePath
+    public Path storedPath(String fileName) {
+        return Paths.get(uploadDir + File.separator + fileName);
+    }
+
+    public Path uploadDirectory() {
+        return Paths.get(uploadDir);
+    }
+
+    // Reads the stored file from the hot upload directory, or from a pack segment once it has been archived
+    public InputStream openFile(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        if (Files.exists(path)) {
+            try {
+                return Files.newInputStream(path);
+            } catch (NoSuchFileException e) {
+                // Archived between the existence check and the open
+            }
+        }
+        return packStore.openStream(filePath);
+    }
+
+    public long fileSize(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        if (Files.exists(path)) {
+            return Files.size(path);
+        }
+        if (packStore.contains(filePath)) {
+            return packStore.size(filePath);
+        }
+        throw new NoSuchFileException(filePath);
+    }
+
+    public boolean exists(String filePath) {
+        return Files.exists(Paths.get(filePath)) || packStore.contains(filePath);
+    }
 }
@@ -0,0 +1,177 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Repository.CapsuleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Deletes files in the upload directory that no capsule references any more,
+ * e.g. after {@code deleteCapsule} or a transaction that failed after
+ * {@code storeFile}. Each run takes the next batch of file names from a single
+ * listing of the upload directory that stays open until the pass is done, checks the names against the last segment of
+ * {@code Capsule.filePath} with a single query per shard, and leaves files younger than the grace period alone so in-flight
+ * uploads are never collected. Matching on the name rather than the full path
+ * keeps attachments stored under an earlier upload directory. Runs in dry-run mode
+ * unless {@code file.gc.dry-run} is turned off.
+ */
+@Service
+@Slf4j
+public class OrphanedAttachmentCollector {
+
+    private final CapsuleRepository capsuleRepository;
+    private final FileStorageService fileStorageService;
+    private final ShardRouter shardRouter;
+
+    private final Counter filesScanned;
+    private final Counter filesReclaimed;
+    private final Counter bytesReclaimed;
+
+    @Value("${file.gc.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.gc.dry-run:true}")
+    private boolean dryRun;
+
+    @Value("${file.gc.batch-size:500}")
+    private int batchSize;
+
+    @Value("${file.gc.grace-period-hours:24}")
+    private long gracePeriodHours;
+
+    // Listing of the current pass; null until the next batch starts a new pass
+    private DirectoryStream<Path> pass;
+    private Iterator<Path> remaining;
+
+    public OrphanedAttachmentCollector(CapsuleRepository capsuleRepository,
+                                       FileStorageService fileStorageService,
+                                       ShardRouter shardRouter,
+                                       MeterRegistry meterRegistry) {
+        this.capsuleRepository = capsuleRepository;
+        this.fileStorageService = fileStorageService;
+        this.shardRouter = shardRouter;
+        this.filesScanned = meterRegistry.counter("attachments.gc.files.scanned");
+        this.filesReclaimed = meterRegistry.counter("attachments.gc.files.reclaimed");
+        this.bytesReclaimed = meterRegistry.counter("attachments.gc.bytes.reclaimed");
+    }
+
+    @Scheduled(fixedDelayString = "${file.gc.interval-ms:60000}")
+    public void collect() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            collectBatch();
+        } catch (IOException e) {
+            log.error("Error collecting orphaned attachments: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the next batch and returns the number of bytes reclaimed, or that
+     * would have been reclaimed in dry-run mode.
+     */
+    public synchronized long collectBatch() throws IOException {
+        List<String> names = nextBatch();
+        if (names.isEmpty()) {
+            return 0;
+        }
+        filesScanned.increment(names.size());
+
+        Instant cutoff = Instant.now().minus(Duration.ofHours(gracePeriodHours));
+        Map<String, Path> candidates = new LinkedHashMap<>();
+        for (String name : names) {
+            Path path = fileStorageService.storedPath(name);
+            try {
+                if (Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                    candidates.put(name, path);
+                }
+            } catch (NoSuchFileException e) {
+                // Removed or archived since it was listed
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        shardRouter.withoutMoves(() -> shardRouter.fanOutAll(() -> capsuleRepository.findFilePathsByFileName(candidates.keySet())))
+                .forEach(filePath -> candidates.remove(fileName(filePath)));
+
+        long reclaimed = 0;
+        for (Path orphan : candidates.values()) {
+            try {
+                long size = Files.size(orphan);
+                if (dryRun) {
+                    log.info("Dry run: would delete orphaned attachment {} ({} bytes)", orphan, size);
+                } else {
+                    Files.delete(orphan);
+                    filesReclaimed.increment();
+                    bytesReclaimed.increment(size);
+                }
+                reclaimed += size;
+            } catch (NoSuchFileException e) {
+                // Already gone
+            }
+        }
+        log.info("{} {} orphaned attachments ({} bytes)", dryRun ? "Found" : "Deleted", candidates.size(), reclaimed);
+        return reclaimed;
+    }
+
+    // Same as the regexp_replace in findFilePathsByFileName, so paths stored on another OS match too
+    private static String fileName(String filePath) {
+        return filePath.substring(Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\')) + 1);
+    }
+
+    // Up to batchSize regular file names from the current pass, starting a new pass if none is open
+    private List<String> nextBatch() throws IOException {
+        if (remaining == null) {
+            Path dir = fileStorageService.uploadDirectory();
+            if (!Files.isDirectory(dir)) {
+                return List.of();
+            }
+            pass = Files.newDirectoryStream(dir);
+            remaining = pass.iterator();
+        }
+        List<String> batch = new ArrayList<>();
+        try {
+            while (batch.size() < batchSize && remaining.hasNext()) {
+                Path path = remaining.next();
+                if (Files.isRegularFile(path)) {
+                    batch.add(path.getFileName().toString());
+                }
+            }
+            if (!remaining.hasNext()) {
+                endPass();
+            }
+        } catch (DirectoryIteratorException e) {
+            endPass();
+            throw e.getCause();
+        }
+        return batch;
+    }
+
+    @PreDestroy
+    private synchronized void endPass() throws IOException {
+        remaining = null;
+        if (pass != null) {
+            try {
+                pass.close();
+            } finally {
+                pass = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt off the request threads, on a pool with one thread per core and a
+ * bounded queue. Hashing is CPU-bound, so more threads than cores only slow every
+ * hash down; once the queue is full new work is refused with a 503 instead of
+ * piling up behind it and starving the rest of the API. Results are handed over
+ * to the application task executor, so the database work callers chain onto them
+ * never occupies a hashing thread.
+ */
+@Service
+@Slf4j
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final Executor completionExecutor;
+
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+    private final Timer queueTimer;
+    private final Counter rejected;
+    private final Counter upgraded;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  MeterRegistry meterRegistry,
+                                  @Qualifier("applicationTaskExecutor") Executor completionExecutor,
+                                  @Value("${auth.hashing.threads:0}") int threads,
+                                  @Value("${auth.hashing.queue-capacity:64}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        this.completionExecutor = completionExecutor;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("password-hashing-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "password.hashing", Tags.empty()).bindTo(meterRegistry);
+        this.hashTimer = meterRegistry.timer("auth.password.hash");
+        this.verifyTimer = meterRegistry.timer("auth.password.verify");
+        this.queueTimer = meterRegistry.timer("auth.password.queue.wait");
+        this.rejected = meterRegistry.counter("auth.password.rejected");
+        this.upgraded = meterRegistry.counter("auth.password.upgraded");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(hashTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(verifyTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True for hashes made with a lower cost than the current one
+    public boolean needsUpgrade(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Rehashes the password with the current cost in the background and hands the
+     * new hash to {@code store}, which returns whether it was saved. Skipped while
+     * the pool is busy; the next login tries again.
+     */
+    public void upgradeInBackground(String rawPassword, Predicate<String> store) {
+        try {
+            encode(rawPassword)
+                    .thenAccept(hash -> {
+                        if (store.test(hash)) {
+                            upgraded.increment();
+                        }
+                    })
+                    .exceptionally(e -> {
+                        log.warn("Error upgrading password hash: {}", e.getMessage());
+                        return null;
+                    });
+        } catch (ServiceBusyException e) {
+            log.debug("Password hashing busy, not upgrading hash");
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Timer timer, Supplier<T> work) {
+        long queued = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                queueTimer.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+                return timer.record(work);
+            }, executor).thenApplyAsync(Function.identity(), completionExecutor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceBusyException("Too many password checks in progress, try again shortly", e);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Config.ShardRoutingDataSource;
+import com.siddardha.digital_time_capsule.Model.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves users whose directory shard differs from their hashed shard, which is
+ * what adding a shard to app.datasource.shards.urls leaves behind. Runs while the
+ * application keeps serving: a move holds the user's directory row and source
+ * row locked, so writes for that user wait for it and then follow the user to
+ * the new shard (see {@link ShardRouter#inUserShard}).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShardRebalancer {
+
+    private final ShardRoutingDataSource dataSource;
+    private final ShardRouter shardRouter;
+
+    @Value("${app.shards.rebalance-batch-size:500}")
+    private int batchSize;
+
+    public synchronized Map<String, Long> rebalance() {
+        long scanned = 0;
+        long moved = 0;
+        long failed = 0;
+        long afterId = 0;
+        List<long[]> page;
+        do {
+            page = directoryPage(afterId);
+            for (long[] entry : page) {
+                afterId = entry[0];
+                scanned++;
+                int target = shardRouter.shardFor(entry[0]);
+                if (target == entry[1]) {
+                    continue;
+                }
+                try {
+                    if (move(entry[0], target)) {
+                        moved++;
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    failed++;
+                    log.error("Error moving user ID {} to shard {}: {}", entry[0], target, e.getMessage());
+                }
+            }
+        } while (page.size() == batchSize);
+        log.info("Rebalanced {} shards: {} users scanned, {} moved, {} failed", shardRouter.shardCount(), scanned, moved, failed);
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("scanned", scanned);
+        result.put("moved", moved);
+        result.put("failed", failed);
+        return result;
+    }
+
+    /**
+     * Copies the user's capsules and messages to the target shard, points the
+     * directory at it and deletes them from the source shard. The target commits
+     * first, so the directory never points at data that is not there; a move that
+     * fails before the directory commit is simply repeated by the next rebalance.
+     */
+    public boolean move(long userId, int target) throws SQLException {
+        Map<Integer, Connection> connections = new LinkedHashMap<>();
+        try {
+            Connection directory = connection(connections, 0);
+            lockOutReferenceChecks(directory);
+            User user = lockDirectoryEntry(directory, userId);
+            if (user == null || user.getShardId() == target) {
+                return false;
+            }
+            int source = user.getShardId();
+            Connection from = connection(connections, source);
+            Connection to = connection(connections, target);
+            if (source != 0) {
+                lockUserRow(from, userId);
+            }
+
+            deleteCapsules(to, userId);
+            if (target != 0) {
+                ShardRouter.upsertUser(to, user, target);
+            }
+            int capsules = copyCapsules(from, to, userId);
+            copyMessages(from, to, userId);
+
+            setShard(directory, userId, target);
+            if (source != 0) {
+                setShard(from, userId, target);
+            }
+            deleteCapsules(from, userId);
+
+            for (int shard : List.of(target, 0, source)) {
+                Connection connection = connections.get(shard);
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                    connection.setAutoCommit(true);
+                }
+            }
+            log.info("Moved user ID {} with {} capsules from shard {} to shard {}", userId, capsules, source, target);
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            for (Connection connection : connections.values()) {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                    }
+                } catch (SQLException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            throw e;
+        } finally {
+            for (Connection connection : connections.values()) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("Error closing shard connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private List<long[]> directoryPage(long afterId) {
+        try (Connection connection = dataSource.shard(0).getConnection();
+             PreparedStatement st = connection.prepareStatement(
+                     "SELECT id, shard_id FROM users WHERE id > ? ORDER BY id LIMIT ?")) {
+            st.setLong(1, afterId);
+            st.setInt(2, batchSize);
+            List<long[]> page = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    page.add(new long[]{rs.getLong(1), rs.getInt(2)});
+                }
+            }
+            return page;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the user directory", e);
+        }
+    }
+
+    private Connection connection(Map<Integer, Connection> connections, int shard) throws SQLException {
+        Connection connection = connections.get(shard);
+        if (connection == null) {
+            connection = dataSource.shard(shard).getConnection();
+            connections.put(shard, connection);
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
+
+    private static User lockDirectoryEntry(Connection directory, long userId) throws SQLException {
+        try (PreparedStatement st = directory.prepareStatement(
+                "SELECT id, username, password, email, role, shard_id FROM users WHERE id = ? FOR UPDATE")) {
+            st.setLong(1, userId);
+            try (ResultSet rs = st.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new User(rs.getLong("id"), rs.getString("username"), rs.getString("password"),
+                        rs.getString("email"), rs.getString("role"), rs.getInt("shard_id"));
+            }
+        }
+    }
+
+    // Released with the directory commit, after the target shard has committed (see ShardRouter#withoutMoves)
+    private static void lockOutReferenceChecks(Connection directory) throws SQLException {
+        try (PreparedStatement st = directory.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+            st.setLong(1, ShardRouter.USER_MOVE_LOCK);
+            st.executeQuery().close();
+        }
+    }
+
+    private static void lockUserRow(Connection shard, long userId) throws SQLException {
+        try (PreparedStatement st = shard.prepareStatement("SELECT 1 FROM users WHERE id = ? FOR UPDATE")) {
+            st.setLong(1, userId);
+            st.executeQuery().close();
+        }
+    }
+
+    private static void setShard(Connection connection, long userId, int shard) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("UPDATE users SET shard_id = ? WHERE id = ?")) {
+            st.setInt(1, shard);
+            st.setLong(2, userId);
+            st.executeUpdate();
+        }
+    }
+
+    // Messages first: there is no foreign key to cascade, and the trigger unlinks their large objects
+    private static void deleteCapsules(Connection connection, long userId) throws SQLException {
+        try (PreparedStatement messages = connection.prepareStatement(
+                "DELETE FROM capsule_messages WHERE capsule_id IN (SELECT id FROM capsules WHERE user_id = ?)");
+             PreparedStatement capsules = connection.prepareStatement("DELETE FROM capsules WHERE user_id = ?")) {
+            messages.setLong(1, userId);
+            messages.executeUpdate();
+            capsules.setLong(1, userId);
+            capsules.executeUpdate();
+        }
+    }
+
+    private int copyCapsules(Connection from, Connection to, long userId) throws SQLException {
+        int copied = 0;
+        try (PreparedStatement select = from.prepareStatement(
+                "SELECT id, title, message_length, file_path, unlock_date_time, unlocked FROM capsules WHERE user_id = ?");
+             PreparedStatement insert = to.prepareStatement(
+                     "INSERT INTO capsules (id, title, message_length, file_path, unlock_date_time, unlocked, user_id) " +
+                             "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            select.setLong(1, userId);
+            select.setFetchSize(batchSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    insert.setLong(1, rs.getLong("id"));
+                    insert.setString(2, rs.getString("title"));
+                    insert.setLong(3, rs.getLong("message_length"));
+                    insert.setString(4, rs.getString("file_path"));
+                    insert.setObject(5, rs.getObject("unlock_date_time", LocalDateTime.class));
+                    insert.setBoolean(6, rs.getBoolean("unlocked"));
+                    insert.setLong(7, userId);
+                    insert.addBatch();
+                    if (++copied % batchSize == 0) {
+                        insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+        return copied;
+    }
+
+    // Bodies are large objects; they are streamed into new large objects on the target
+    private void copyMessages(Connection from, Connection to, long userId) throws SQLException {
+        try (PreparedStatement select = from.prepareStatement(
+                "SELECT m.capsule_id, m.body FROM capsule_messages m JOIN capsules c ON c.id = m.capsule_id " +
+                        "WHERE c.user_id = ?");
+             PreparedStatement insert = to.prepareStatement(
+                     "INSERT INTO capsule_messages (capsule_id, body) VALUES (?, ?)")) {
+            select.setLong(1, userId);
+            select.setFetchSize(batchSize);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    insert.setLong(1, rs.getLong("capsule_id"));
+                    Blob body = rs.getBlob("body");
+                    if (body == null) {
+                        insert.setNull(2, Types.BLOB);
+                    } else {
+                        insert.setBlob(2, body.getBinaryStream(), body.length());
+                    }
+                    insert.executeUpdate();
+                }
+            }
+        }
+    }
+}
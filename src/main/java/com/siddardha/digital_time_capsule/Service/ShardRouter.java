@@ -0,0 +1,268 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Config.ReadYourWritesContext;
+import com.siddardha.digital_time_capsule.Config.ShardContext;
+import com.siddardha.digital_time_capsule.Config.ShardRoutingDataSource;
+import com.siddardha.digital_time_capsule.Exception.ResourceNotFoundException;
+import com.siddardha.digital_time_capsule.Model.User;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Places users on shards and runs work on the shard that owns a user's capsules.
+ * New users are placed by a jump consistent hash of their id, so adding a shard
+ * only moves the users that hash onto it. The placement is recorded in the user
+ * directory (users.shard_id on shard 0), which stays authoritative while
+ * {@link ShardRebalancer} moves users.
+ */
+@Service
+@Slf4j
+public class ShardRouter {
+
+    static final String UPSERT_USER = "INSERT INTO users (id, username, password, email, role, shard_id) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET username = EXCLUDED.username, " +
+            "password = EXCLUDED.password, email = EXCLUDED.email, role = EXCLUDED.role, shard_id = EXCLUDED.shard_id";
+
+    // Postgres advisory lock on shard 0: held exclusively by a user move until the directory
+    // commits, and shared by reference checks that visit every shard
+    static final long USER_MOVE_LOCK = 0x5348415244L;
+
+    private final ShardRoutingDataSource dataSource;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readWrite;
+    private final TransactionTemplate readOnly;
+    private final ExecutorService fanOutExecutor;
+
+    @Value("${app.shards.max-attempts:3}")
+    private int maxAttempts;
+
+    public ShardRouter(ShardRoutingDataSource dataSource,
+                       EntityManager entityManager,
+                       PlatformTransactionManager transactionManager) {
+        this.dataSource = dataSource;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        // One thread per shard, shared by every fan-out: tasks must be short shard queries,
+        // never per-row work or calls to other systems
+        this.fanOutExecutor = Executors.newFixedThreadPool(dataSource.shardCount(),
+                Thread.ofPlatform().name("shard-fan-out-", 0).daemon().factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanOutExecutor.shutdownNow();
+    }
+
+    public int shardCount() {
+        return dataSource.shardCount();
+    }
+
+    public int shardFor(long userId) {
+        return jumpHash(userId, shardCount());
+    }
+
+    // Jump consistent hash (Lamping & Veach): uniform over the buckets, and adding a
+    // bucket only reassigns keys to the new bucket
+    static int jumpHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    // Records the hashed shard of a newly registered user and copies the user row there
+    public void assign(User user) {
+        int shard = shardFor(user.getId());
+        if (shard != 0) {
+            try (Connection connection = dataSource.shard(shard).getConnection()) {
+                upsertUser(connection, user, shard);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not copy user " + user.getId() + " to shard " + shard, e);
+            }
+        }
+        try (ShardContext.Scope ignored = ShardContext.use(0)) {
+            jdbcTemplate.update("UPDATE users SET shard_id = ? WHERE id = ?", shard, user.getId());
+        }
+        user.setShardId(shard);
+    }
+
+    // Directory lookup on the primary, so a user that was just moved is never routed to the old shard
+    public int shardOf(String username) {
+        return locate(username).shard();
+    }
+
+    /**
+     * Runs {@code work} in a transaction on the shard that owns the user, passing the
+     * user row of that shard. Writes take a share lock on it, which waits for a move
+     * of the user in progress; if the user turns out to have moved meanwhile, the
+     * directory is read again and the work retried on the new shard. A read that
+     * does not find the user on a lagging replica is repeated on the primary.
+     */
+    public <T> T inUserShard(String username, boolean readOnlyWork, Function<User, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            Placement placement = locate(username);
+            try (ShardContext.Scope ignored = ShardContext.use(placement.shard())) {
+                return (readOnlyWork ? readOnly : readWrite).execute(status -> {
+                    // Reads may be served by a lagging replica, so only writes check ownership
+                    User user = readOnlyWork
+                            ? entityManager.find(User.class, placement.userId())
+                            : entityManager.find(User.class, placement.userId(), LockModeType.PESSIMISTIC_READ);
+                    if (user == null && readOnlyWork && !ReadYourWritesContext.isPinned()) {
+                        throw new ReplicaBehindException();
+                    }
+                    if (user == null || (!readOnlyWork && user.getShardId() != placement.shard())) {
+                        throw new UserMovedException();
+                    }
+                    return work.apply(user);
+                });
+            } catch (ReplicaBehindException e) {
+                // E.g. a user who registered moments ago; the primary has the row
+                return ReadYourWritesContext.onPrimary(() -> inUserShard(username, readOnlyWork, work));
+            } catch (UserMovedException e) {
+                if (attempt >= maxAttempts) {
+                    throw new IllegalStateException("User " + username + " kept moving between shards");
+                }
+                log.debug("User {} moved away from shard {}, retrying", username, placement.shard());
+            }
+        }
+    }
+
+    public <T> T inShard(int shard, boolean readOnlyWork, Supplier<T> work) {
+        try (ShardContext.Scope ignored = ShardContext.use(shard)) {
+            return (readOnlyWork ? readOnly : readWrite).execute(status -> work.get());
+        }
+    }
+
+    // Runs the work on every shard in parallel, each with its shard selected and the caller's
+    // read-your-writes pin; results are in shard order
+    public <T> List<T> onEachShard(IntFunction<T> work) {
+        boolean pinned = ReadYourWritesContext.isPinned();
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int shard = 0; shard < shardCount(); shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                // The pool threads outlive the task, so a pin from a write in it must not stay behind
+                if (pinned) {
+                    ReadYourWritesContext.pin();
+                }
+                try (ShardContext.Scope ignored = ShardContext.use(target)) {
+                    return work.apply(target);
+                } finally {
+                    ReadYourWritesContext.clear();
+                }
+            }, fanOutExecutor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    // Runs the work in a read-only transaction on every shard in parallel
+    public <T> List<T> fanOut(Supplier<T> work) {
+        return onEachShard(shard -> inShard(shard, true, work));
+    }
+
+    public <T> List<T> fanOutAll(Supplier<List<T>> work) {
+        return fanOut(work).stream().flatMap(List::stream).toList();
+    }
+
+    /**
+     * Runs {@code work} while no user move is in flight, for checks that must see every
+     * row exactly once across shards (e.g. whether any capsule still references a
+     * file). A move commits the target shard before the source, so a check visiting
+     * the shards at slightly different moments could otherwise see neither copy. The
+     * work runs pinned to the primaries, since a lagging replica may not have the
+     * target copy of a move that just committed.
+     */
+    public <T> T withoutMoves(Supplier<T> work) {
+        try (Connection connection = dataSource.shard(0).getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement st = connection.prepareStatement("SELECT pg_advisory_xact_lock_shared(?)")) {
+                st.setLong(1, USER_MOVE_LOCK);
+                st.executeQuery().close();
+            }
+            try {
+                return ReadYourWritesContext.onPrimary(work);
+            } finally {
+                // Ends the transaction and with it the lock
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not wait for user moves to finish", e);
+        }
+    }
+
+    private Placement locate(String username) {
+        try (ShardContext.Scope ignored = ShardContext.use(0)) {
+            return jdbcTemplate.query("SELECT id, shard_id FROM users WHERE username = ?",
+                            (rs, row) -> new Placement(rs.getLong("id"), rs.getInt("shard_id")), username)
+                    .stream()
+                    .findFirst()
+                    .orElseThrow(() -> new ResourceNotFoundException("User not found: " + username));
+        }
+    }
+
+    static void upsertUser(Connection connection, User user, int shard) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement(UPSERT_USER)) {
+            st.setLong(1, user.getId());
+            st.setString(2, user.getUsername());
+            st.setString(3, user.getPassword());
+            st.setString(4, user.getEmail());
+            st.setString(5, user.getRole());
+            st.setInt(6, shard);
+            st.executeUpdate();
+        }
+    }
+
+    private record Placement(long userId, int shard) {
+    }
+
+    private static class UserMovedException extends RuntimeException {
+        UserMovedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class ReplicaBehindException extends RuntimeException {
+        ReplicaBehindException() {
+            super(null, null, false, false);
+        }
+    }
+}
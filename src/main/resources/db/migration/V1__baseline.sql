@@ -0,0 +1,25 @@
+-- Schema as previously generated by spring.jpa.hibernate.ddl-auto=update.
+-- Existing databases are baselined at this version and skip this script.
+
+CREATE TABLE IF NOT EXISTS users (
+    id       BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    email    VARCHAR(255) NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    role     VARCHAR(255),
+    username VARCHAR(255) NOT NULL,
+    CONSTRAINT users_pkey PRIMARY KEY (id),
+    CONSTRAINT uk_users_email UNIQUE (email),
+    CONSTRAINT uk_users_username UNIQUE (username)
+);
+
+CREATE TABLE IF NOT EXISTS capsules (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    file_path        VARCHAR(255),
+    message          VARCHAR(5000),
+    title            VARCHAR(255),
+    unlock_date_time TIMESTAMP(6),
+    unlocked         BOOLEAN NOT NULL,
+    user_id          BIGINT,
+    CONSTRAINT capsules_pkey PRIMARY KEY (id),
+    CONSTRAINT fk_capsules_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
@@ -0,0 +1,8 @@
+-- findByUser, findByUserAndUnlockDateTimeBefore/After and the per-user export pages
+CREATE INDEX IF NOT EXISTS idx_capsules_user_unlock ON capsules (user_id, unlock_date_time);
+
+-- CapsuleScheduler due-capsule lookup; only capsules still waiting to unlock are indexed
+CREATE INDEX IF NOT EXISTS idx_capsules_due ON capsules (unlock_date_time) WHERE unlocked = false;
+
+-- Attachment reference checks (pack compaction) by stored path
+CREATE INDEX IF NOT EXISTS idx_capsules_file_path ON capsules (file_path) WHERE file_path IS NOT NULL;
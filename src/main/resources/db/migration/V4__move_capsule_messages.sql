@@ -0,0 +1,34 @@
+-- Capsule bodies move out of the capsules row into large objects referenced from
+-- capsule_messages, so scans and listings of capsules never read them.
+-- No foreign key to capsules: a partitioned capsules table has a composite key.
+
+CREATE TABLE capsule_messages (
+    capsule_id BIGINT NOT NULL,
+    body       OID,
+    CONSTRAINT capsule_messages_pkey PRIMARY KEY (capsule_id)
+);
+
+ALTER TABLE capsules ADD COLUMN message_length BIGINT NOT NULL DEFAULT 0;
+
+INSERT INTO capsule_messages (capsule_id, body)
+SELECT id, lo_from_bytea(0, convert_to(message, 'UTF8')) FROM capsules WHERE message IS NOT NULL;
+UPDATE capsules SET message_length = octet_length(convert_to(message, 'UTF8')) WHERE message IS NOT NULL;
+
+ALTER TABLE capsules DROP COLUMN message;
+
+-- Large objects are not removed with the row that references them
+CREATE FUNCTION capsule_messages_unlink_body() RETURNS trigger AS $$
+BEGIN
+    IF OLD.body IS NOT NULL AND (TG_OP = 'DELETE' OR NEW.body IS DISTINCT FROM OLD.body) THEN
+        PERFORM lo_unlink(OLD.body);
+    END IF;
+    IF TG_OP = 'DELETE' THEN
+        RETURN OLD;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER capsule_messages_unlink_body
+    BEFORE UPDATE OR DELETE ON capsule_messages
+    FOR EACH ROW EXECUTE FUNCTION capsule_messages_unlink_body();
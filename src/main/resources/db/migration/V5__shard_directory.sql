@@ -0,0 +1,21 @@
+-- Capsules are sharded by user. On shard 0, users is the directory and shard_id
+-- is where the user's capsules live. The other shards hold copies of the rows of
+-- the users they store capsules for, and shard_id there says whether the shard
+-- still owns that user.
+ALTER TABLE users ADD COLUMN shard_id INTEGER NOT NULL DEFAULT 0;
+
+-- Each shard hands out capsule ids from its own block of 2^40, so ids stay unique
+-- across shards and keep their value when a user's capsules are moved.
+DO $$
+DECLARE
+    seq      TEXT   := pg_get_serial_sequence('capsules', 'id');
+    first_id BIGINT := (${shard_index}::BIGINT << 40) + 1;
+    last_id  BIGINT := (${shard_index}::BIGINT + 1) << 40;
+    next_id  BIGINT;
+BEGIN
+    SELECT COALESCE(s.last_value + 1, s.start_value) INTO next_id
+    FROM pg_sequences s
+    WHERE format('%I.%I', s.schemaname, s.sequencename)::regclass = seq::regclass;
+    EXECUTE format('ALTER SEQUENCE %s MINVALUE %s MAXVALUE %s START WITH %s RESTART WITH %s',
+                   seq, first_id, last_id, first_id, GREATEST(first_id, next_id));
+END $$;
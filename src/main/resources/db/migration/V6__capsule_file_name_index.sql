@@ -0,0 +1,4 @@
+-- Orphaned attachment collection matches stored files by name only, so moving the
+-- upload directory does not make every existing attachment look unreferenced
+CREATE INDEX IF NOT EXISTS idx_capsules_file_name ON capsules (regexp_replace(file_path, '^.*[/\\]', ''))
+    WHERE file_path IS NOT NULL;
@@ -0,0 +1,77 @@
+-- Optional range partitioning of capsules by unlock_date_time (one partition per year).
+-- Enabled by adding classpath:db/partitioning to spring.flyway.locations; on a database
+-- that is already past V3, also set spring.flyway.out-of-order=true. The table is
+-- rebuilt from whatever columns, defaults and indexes capsules has at that point, so
+-- the script does not depend on the migrations that ran before it.
+-- The partition key has to be part of the primary key (so unlock_date_time becomes
+-- NOT NULL; the application always sets it), and ids come from a plain sequence
+-- because identity columns cannot be shared across partitions.
+
+-- The new sequence continues the old one within the same bounds (the id block of a shard)
+DO $$
+DECLARE
+    old_seq TEXT := pg_get_serial_sequence('capsules', 'id');
+    bounds  RECORD;
+BEGIN
+    SELECT s.min_value, s.max_value, COALESCE(s.last_value + 1, s.start_value) AS next_id INTO bounds
+    FROM pg_sequences s
+    WHERE format('%I.%I', s.schemaname, s.sequencename)::regclass = old_seq::regclass;
+    EXECUTE format('CREATE SEQUENCE capsules_id_seq_partitioned MINVALUE %s MAXVALUE %s START WITH %s',
+                   bounds.min_value, bounds.max_value,
+                   GREATEST(bounds.next_id, COALESCE((SELECT max(id) + 1 FROM capsules), bounds.min_value)));
+END $$;
+
+-- Secondary indexes are recreated on the partitioned table under the same names
+CREATE TEMPORARY TABLE capsule_index_definitions ON COMMIT DROP AS
+SELECT i.indexrelid::regclass::TEXT AS index_name, pg_get_indexdef(i.indexrelid) AS definition
+FROM pg_index i
+WHERE i.indrelid = 'capsules'::regclass AND NOT i.indisprimary;
+
+DO $$
+DECLARE
+    idx RECORD;
+BEGIN
+    FOR idx IN SELECT index_name FROM capsule_index_definitions LOOP
+        EXECUTE format('DROP INDEX %s', idx.index_name);
+    END LOOP;
+END $$;
+
+ALTER TABLE capsules RENAME TO capsules_unpartitioned;
+ALTER TABLE capsules_unpartitioned RENAME CONSTRAINT capsules_pkey TO capsules_unpartitioned_pkey;
+
+CREATE TABLE capsules (LIKE capsules_unpartitioned INCLUDING DEFAULTS) PARTITION BY RANGE (unlock_date_time);
+ALTER TABLE capsules ALTER COLUMN id SET DEFAULT nextval('capsules_id_seq_partitioned');
+ALTER TABLE capsules ADD CONSTRAINT capsules_pkey PRIMARY KEY (id, unlock_date_time);
+ALTER TABLE capsules ADD CONSTRAINT fk_capsules_user_partitioned FOREIGN KEY (user_id) REFERENCES users (id);
+ALTER SEQUENCE capsules_id_seq_partitioned OWNED BY capsules.id;
+
+-- Yearly partitions covering existing data and the next ten years; anything later
+-- lands in the default partition.
+DO $$
+DECLARE
+    first_year INT := LEAST(
+            COALESCE((SELECT EXTRACT(YEAR FROM min(unlock_date_time))::INT FROM capsules_unpartitioned),
+                     EXTRACT(YEAR FROM now())::INT),
+            EXTRACT(YEAR FROM now())::INT);
+    last_year  INT := GREATEST(
+            COALESCE((SELECT EXTRACT(YEAR FROM max(unlock_date_time))::INT FROM capsules_unpartitioned), 0),
+            EXTRACT(YEAR FROM now())::INT + 10);
+BEGIN
+    FOR y IN first_year..last_year LOOP
+        EXECUTE format('CREATE TABLE capsules_%s PARTITION OF capsules FOR VALUES FROM (%L) TO (%L)',
+                       y, make_date(y, 1, 1), make_date(y + 1, 1, 1));
+    END LOOP;
+END $$;
+CREATE TABLE capsules_default PARTITION OF capsules DEFAULT;
+
+INSERT INTO capsules SELECT * FROM capsules_unpartitioned;
+DROP TABLE capsules_unpartitioned;
+
+DO $$
+DECLARE
+    idx RECORD;
+BEGIN
+    FOR idx IN SELECT definition FROM capsule_index_definitions LOOP
+        EXECUTE idx.definition;
+    END LOOP;
+END $$;
@@ -0,0 +1,52 @@
+package com.siddardha.digital_time_capsule;
+
+import com.siddardha.digital_time_capsule.Controller.AuthController;
+import com.siddardha.digital_time_capsule.DTO.CapsuleRequest;
+import com.siddardha.digital_time_capsule.Model.User;
+import com.siddardha.digital_time_capsule.Service.CapsuleService;
+import com.siddardha.digital_time_capsule.Service.EmailService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Base of the tests that run the whole application. Subclasses point it at their
+ * databases with a {@code @DynamicPropertySource}; see {@link EmbeddedDatabaseTest}
+ * for the common case of a single one.
+ */
+@SpringBootTest(properties = {"file.gc.enabled=false", "spring.jpa.show-sql=false"})
+public abstract class ApplicationTest {
+
+    @Autowired
+    protected AuthController authController;
+
+    @Autowired
+    protected CapsuleService capsuleService;
+
+    @MockitoBean
+    protected EmailService emailService;
+
+    protected String register() {
+        return register("u" + UUID.randomUUID().toString().substring(0, 8)).getUsername();
+    }
+
+    protected User register(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPassword("secret");
+        authController.register(user).join();
+        return user;
+    }
+
+    protected static CapsuleRequest capsuleRequest(String message) {
+        CapsuleRequest request = new CapsuleRequest();
+        request.setTitle("title");
+        request.setMessage(message);
+        request.setUnlockDateTime(LocalDateTime.now().plusDays(1));
+        return request;
+    }
+}
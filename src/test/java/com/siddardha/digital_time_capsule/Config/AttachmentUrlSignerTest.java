@@ -0,0 +1,76 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttachmentUrlSignerTest {
+
+    private static final JwtUtil JWT_UTIL = new JwtUtil("test-secret-that-is-long-enough-for-hs512-signatures-0123456789");
+
+    @Test
+    void signedUrlVerifies() {
+        AttachmentUrlSigner signer = signer(1_000_000);
+        AttachmentUrlSigner.SignedUrl url = signer.sign(42, "uploads/1700000000000_photo 1+2.jpg");
+
+        assertTrue(url.url().startsWith("/files/42/1700000000000_photo%201+2.jpg?path=uploads%2F1700000000000_photo+1%2B2.jpg&expires="
+                + url.expiresAt() + "&signature="));
+        assertTrue(signer.verify(42, "1700000000000_photo 1+2.jpg", "uploads/1700000000000_photo 1+2.jpg", url.expiresAt(), signature(url)));
+    }
+
+    @Test
+    void tamperedNameOrExpiryIsRejected() {
+        AttachmentUrlSigner signer = signer(1_000_000);
+        AttachmentUrlSigner.SignedUrl url = signer.sign(1, "uploads/1_a.jpg");
+
+        assertFalse(signer.verify(1, "1_b.jpg", "uploads/1_b.jpg", url.expiresAt(), signature(url)));
+        assertFalse(signer.verify(1, "1_a.jpg", "other/1_a.jpg", url.expiresAt(), signature(url)));
+        assertFalse(signer.verify(2, "1_a.jpg", "uploads/1_a.jpg", url.expiresAt(), signature(url)));
+        assertFalse(signer.verify(1, "1_b.jpg", "uploads/1_a.jpg", url.expiresAt(), signature(url)));
+        assertFalse(signer.verify(1, "1_a.jpg", "uploads/1_a.jpg", url.expiresAt() + 300, signature(url)));
+        assertFalse(signer.verify(1, "1_a.jpg", "uploads/1_a.jpg", url.expiresAt(), "not base64!"));
+    }
+
+    @Test
+    void expiredUrlIsRejected() {
+        AttachmentUrlSigner.SignedUrl url = signer(1_000_000).sign(1, "uploads/1_a.jpg");
+
+        assertFalse(signer(url.expiresAt()).verify(1, "1_a.jpg", "uploads/1_a.jpg", url.expiresAt(), signature(url)));
+    }
+
+    @Test
+    void urlsIssuedWithinABucketAreIdentical() {
+        // Bucket of 300 s: 1_000_201 + 900 rounds up to 1_001_400, as does 1_000_500 + 900
+        AttachmentUrlSigner.SignedUrl first = signer(1_000_201).sign(1, "uploads/1_a.jpg");
+        AttachmentUrlSigner.SignedUrl second = signer(1_000_500).sign(1, "uploads/1_a.jpg");
+        AttachmentUrlSigner.SignedUrl next = signer(1_000_501).sign(1, "uploads/1_a.jpg");
+
+        assertEquals(1_001_400, first.expiresAt());
+        assertEquals(first.url(), second.url());
+        assertNotEquals(first.url(), next.url());
+    }
+
+    @Test
+    void keyIsNotTheJwtKey() {
+        AttachmentUrlSigner other = new AttachmentUrlSigner(new JwtUtil("another-secret-that-is-long-enough-for-hs512-0123456789abcdef"), 900, 300);
+        AttachmentUrlSigner.SignedUrl url = signer(Instant.now().getEpochSecond()).sign(1, "uploads/1_a.jpg");
+
+        assertFalse(other.verify(1, "1_a.jpg", "uploads/1_a.jpg", url.expiresAt(), signature(url)));
+    }
+
+    private static AttachmentUrlSigner signer(long nowEpochSecond) {
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(nowEpochSecond), ZoneOffset.UTC);
+        return new AttachmentUrlSigner(JWT_UTIL.deriveKey("attachment-url"), 900, 300, clock);
+    }
+
+    private static String signature(AttachmentUrlSigner.SignedUrl url) {
+        return url.url().substring(url.url().indexOf("&signature=") + "&signature=".length());
+    }
+}
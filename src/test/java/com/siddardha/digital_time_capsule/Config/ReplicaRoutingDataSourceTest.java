@@ -0,0 +1,112 @@
+package com.siddardha.digital_time_capsule.Config;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the routing against two embedded Postgres servers, each holding a marker
+ * row that tells which one answered.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private EmbeddedPostgres primary;
+    private EmbeddedPostgres replica;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        primary = EmbeddedPostgres.start();
+        replica = EmbeddedPostgres.start();
+        mark(primary.getPostgresDatabase(), "primary");
+        mark(replica.getPostgresDatabase(), "replica");
+
+        DataSource routing = ReplicaRoutingDataSource.create(primary.getPostgresDatabase(), replica.getPostgresDatabase(), 60_000);
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(routing);
+        readOnly = new TransactionTemplate(txManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(txManager);
+        jdbc = new JdbcTemplate(routing);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ReadYourWritesContext.clear();
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() {
+        assertEquals("replica", readOnly.execute(status -> server()));
+    }
+
+    @Test
+    void readWriteTransactionsUseThePrimary() {
+        assertEquals("primary", readWrite.execute(status -> server()));
+    }
+
+    @Test
+    void readsAfterAWriteInTheSameRequestUseThePrimary() {
+        readWrite.executeWithoutResult(status -> jdbc.update("UPDATE marker SET touched = true"));
+        assertEquals("primary", readOnly.execute(status -> server()));
+
+        ReadYourWritesContext.clear();
+        assertEquals("replica", readOnly.execute(status -> server()));
+    }
+
+    @Test
+    void explicitPinUsesThePrimary() {
+        ReadYourWritesContext.pin();
+        assertEquals("primary", readOnly.execute(status -> server()));
+    }
+
+    @Test
+    void fallsBackToThePrimaryWhenTheReplicaIsDown() throws Exception {
+        replica.close();
+        assertEquals("primary", readOnly.execute(status -> server()));
+        assertEquals("primary", readOnly.execute(status -> server()));
+    }
+
+    @Test
+    void explicitCredentialsAreRoutedLikeTheDefaultOnes() throws Exception {
+        DataSource routing = new ReplicaRoutingDataSource(primary.getPostgresDatabase(), replica.getPostgresDatabase(), 60_000);
+        try (Connection c = routing.getConnection("postgres", "postgres")) {
+            assertEquals("replica", server(c));
+        }
+
+        ReadYourWritesContext.pin();
+        try (Connection c = routing.getConnection("postgres", "postgres")) {
+            assertEquals("primary", server(c));
+        }
+    }
+
+    private String server() {
+        return jdbc.queryForObject("SELECT name FROM marker", String.class);
+    }
+
+    private static String server(Connection connection) {
+        return new JdbcTemplate(new SingleConnectionDataSource(connection, true))
+                .queryForObject("SELECT name FROM marker", String.class);
+    }
+
+    private static void mark(DataSource dataSource, String name) throws Exception {
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE marker (name TEXT, touched BOOLEAN DEFAULT false)");
+            st.execute("INSERT INTO marker (name) VALUES ('" + name + "')");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.siddardha.digital_time_capsule.Controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.siddardha.digital_time_capsule.EmbeddedDatabaseTest;
+import com.siddardha.digital_time_capsule.Service.AttachmentPackStore;
+import com.siddardha.digital_time_capsule.Service.FileStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@AutoConfigureMockMvc
+class AttachmentControllerTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private AttachmentPackStore packStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void servesUnlockedAttachmentsThroughSignedUrls() throws Exception {
+        String username = register();
+        byte[] page = "<script>alert(1)</script>".getBytes(StandardCharsets.UTF_8);
+        Long id = capsuleWithFile(username, "page.html", page);
+
+        mockMvc.perform(get("/api/capsules/{id}/attachment-url", id).with(user(username)))
+                .andExpect(status().isForbidden());
+
+        unlock(id);
+        String url = signedUrl(username, id);
+
+        MvcResult started = mockMvc.perform(get(URI.create(url)))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"))
+                .andExpect(header().string("Content-Security-Policy", "sandbox"))
+                .andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(started)).andReturn().getResponse();
+        assertArrayEquals(page, response.getContentAsByteArray());
+        ContentDisposition disposition = ContentDisposition.parse(response.getHeader(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals("attachment", disposition.getType());
+        assertEquals("page.html", disposition.getFilename());
+        String cacheControl = response.getHeader(HttpHeaders.CACHE_CONTROL);
+        assertTrue(cacheControl.contains("public") && cacheControl.contains("immutable"), cacheControl);
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get(URI.create(url)).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string("X-Content-Type-Options", "nosniff"));
+
+        String tampered = url.replaceAll("signature=[^&]+", "signature=AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA");
+        mockMvc.perform(get(URI.create(tampered)))
+                .andExpect(status().isForbidden());
+        String otherExpiry = url.replaceAll("expires=(\\d+)", "expires=1$1");
+        mockMvc.perform(get(URI.create(otherExpiry)))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void showsOnlyMediaInline() throws Exception {
+        String username = register();
+        Long id = capsuleWithFile(username, "photo.png", new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+        unlock(id);
+
+        MvcResult started = mockMvc.perform(get(URI.create(signedUrl(username, id))))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andExpect(header().string("Content-Security-Policy", "sandbox"))
+                .andReturn();
+        assertEquals("inline", ContentDisposition.parse(started.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION)).getType());
+    }
+
+    @Test
+    void servesAttachmentsOutsideTheUploadDirectoryAndPackedOnes() throws Exception {
+        String username = register();
+        byte[] old = "stored before the upload directory moved".getBytes(StandardCharsets.UTF_8);
+        Path earlierUploads = Files.createTempDirectory("earlier-uploads");
+        Path oldFile = Files.write(earlierUploads.resolve("1600000000000_old.txt"), old);
+        Long oldId = capsule(username, oldFile.toString());
+
+        byte[] archived = "archived into a pack segment".getBytes(StandardCharsets.UTF_8);
+        String packedPath = fileStorageService.storeFile(new MockMultipartFile("file", "archived.txt", null, archived));
+        Long packedId = capsule(username, packedPath);
+        packStore.append(packedPath, Path.of(packedPath));
+        Files.delete(Path.of(packedPath));
+
+        unlock(oldId);
+        unlock(packedId);
+        assertArrayEquals(old, download(signedUrl(username, oldId)));
+        assertArrayEquals(archived, download(signedUrl(username, packedId)));
+    }
+
+    private byte[] download(String url) throws Exception {
+        MvcResult started = mockMvc.perform(get(URI.create(url)))
+                .andExpect(status().isOk())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsByteArray();
+    }
+
+    private Long capsuleWithFile(String username, String fileName, byte[] content) throws Exception {
+        return capsule(username, fileStorageService.storeFile(new MockMultipartFile("file", fileName, null, content)));
+    }
+
+    private Long capsule(String username, String filePath) {
+        return capsuleService.createCapsuleWithFile(capsuleRequest("message"), username, filePath).getId();
+    }
+
+    private static void unlock(Long id) {
+        new JdbcTemplate(postgres.getPostgresDatabase())
+                .update("UPDATE capsules SET unlock_date_time = ? WHERE id = ?", LocalDateTime.now().minusMinutes(1), id);
+    }
+
+    private String signedUrl(String username, Long id) throws Exception {
+        String json = mockMvc.perform(get("/api/capsules/{id}/attachment-url", id).with(user(username)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode body = objectMapper.readTree(json);
+        assertTrue(body.get("expiresAt").asLong() > 0);
+        return body.get("url").asText();
+    }
+}
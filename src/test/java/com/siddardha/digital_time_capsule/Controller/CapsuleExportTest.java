@@ -0,0 +1,131 @@
+package com.siddardha.digital_time_capsule.Controller;
+
+import com.siddardha.digital_time_capsule.EmbeddedDatabaseTest;
+import com.siddardha.digital_time_capsule.Service.FileStorageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Page size 2, so the five capsules of the test user take three pages
+@TestPropertySource(properties = "export.page-size=2")
+@AutoConfigureMockMvc
+class CapsuleExportTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Test
+    void exportsEveryCapsuleAcrossPages() throws Exception {
+        String username = "jörg_" + UUID.randomUUID().toString().substring(0, 8);
+        register(username);
+
+        byte[] photo = new byte[50_000];
+        new Random(1).nextBytes(photo);
+        byte[] notes = "notes ".repeat(1_000).getBytes(StandardCharsets.UTF_8);
+        List<Long> ids = new ArrayList<>();
+        ids.add(capsuleService.createCapsuleWithFile(capsuleRequest("with photo"), username,
+                fileStorageService.storeFile(new MockMultipartFile("file", "photo.JPG", "image/jpeg", photo))).getId());
+        ids.add(capsuleService.createCapsuleWithFile(capsuleRequest("with notes"), username,
+                fileStorageService.storeFile(new MockMultipartFile("file", "notes.txt", "text/plain", notes))).getId());
+        for (int i = 0; i < 3; i++) {
+            ids.add(capsuleService.createCapsule(capsuleRequest("message " + i), username).getId());
+        }
+
+        MvcResult started = mockMvc.perform(get("/api/capsules/export").with(user(username)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // The export runs without the default async timeout
+        assertEquals(-1, started.getRequest().getAsyncContext().getTimeout());
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        ContentDisposition disposition = ContentDisposition.parse(result.getResponse().getHeader(HttpHeaders.CONTENT_DISPOSITION));
+        assertEquals("attachment", disposition.getType());
+        assertEquals("capsules-" + username + ".zip", disposition.getFilename());
+
+        Path zipFile = Files.createTempFile("export", ".zip");
+        try {
+            Files.write(zipFile, result.getResponse().getContentAsByteArray());
+            try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+                List<String> capsuleDirs = new ArrayList<>();
+                zip.stream()
+                        .filter(entry -> entry.getName().endsWith("/capsule.json"))
+                        .forEach(entry -> capsuleDirs.add(entry.getName()));
+                List<String> expected = new ArrayList<>();
+                for (Long id : ids) {
+                    expected.add("capsules/" + id + "/capsule.json");
+                }
+                Collections.sort(capsuleDirs);
+                Collections.sort(expected);
+                assertEquals(expected, capsuleDirs);
+                assertEquals("message 2", read(zip, "capsules/" + ids.get(4) + "/message.txt"));
+
+                ZipEntry photoEntry = single(zip, "capsules/" + ids.get(0) + "/", "photo.JPG");
+                assertEquals(ZipEntry.STORED, photoEntry.getMethod());
+                CRC32 crc = new CRC32();
+                crc.update(photo);
+                assertEquals(crc.getValue(), photoEntry.getCrc());
+                assertEquals(photo.length, photoEntry.getCompressedSize());
+                try (InputStream in = zip.getInputStream(photoEntry)) {
+                    assertArrayEquals(photo, in.readAllBytes());
+                }
+
+                ZipEntry notesEntry = single(zip, "capsules/" + ids.get(1) + "/", "notes.txt");
+                assertEquals(ZipEntry.DEFLATED, notesEntry.getMethod());
+                try (InputStream in = zip.getInputStream(notesEntry)) {
+                    assertArrayEquals(notes, in.readAllBytes());
+                }
+            }
+        } finally {
+            Files.deleteIfExists(zipFile);
+        }
+    }
+
+    // Stored attachment names are "<upload millis>_<original name>"
+    private static ZipEntry single(ZipFile zip, String dir, String originalName) {
+        ZipEntry found = zip.stream()
+                .filter(entry -> entry.getName().startsWith(dir) && entry.getName().endsWith("_" + originalName))
+                .findFirst()
+                .orElse(null);
+        assertNotNull(found, "no " + originalName + " in " + dir);
+        return found;
+    }
+
+    private static String read(ZipFile zip, String name) throws Exception {
+        try (InputStream in = zip.getInputStream(zip.getEntry(name))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.siddardha.digital_time_capsule;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs the application against an embedded Postgres server and an empty upload
+ * directory, both started for each test class.
+ */
+public abstract class EmbeddedDatabaseTest extends ApplicationTest {
+
+    protected static EmbeddedPostgres postgres;
+    protected static Path uploads;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws Exception {
+        postgres = EmbeddedPostgres.start();
+        uploads = Files.createTempDirectory("test-uploads");
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("file.upload-dir", uploads::toString);
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        postgres.close();
+    }
+}
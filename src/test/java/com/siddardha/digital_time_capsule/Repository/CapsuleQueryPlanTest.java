@@ -0,0 +1,260 @@
+package com.siddardha.digital_time_capsule.Repository;
+
+import com.siddardha.digital_time_capsule.ApplicationTest;
+import com.siddardha.digital_time_capsule.Model.User;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.postgresql.PGStatement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Migrates an embedded Postgres with and without the optional partitioning
+ * migration and loads a realistic amount of data. The hot repository queries run
+ * through Hibernate against one of the databases, and the SQL it sends, with its
+ * bound parameters, is checked with {@code EXPLAIN} on all of them: none may scan
+ * capsules sequentially.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CapsuleQueryPlanTest extends ApplicationTest {
+
+    // Queries recorded on the thread that runs sqlOf, not those of the application's own jobs
+    private static final ThreadLocal<List<String>> EXECUTED = new ThreadLocal<>();
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private CapsuleRepository capsuleRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @DynamicPropertySource
+    static void databases(DynamicPropertyRegistry registry) throws Exception {
+        postgres = EmbeddedPostgres.start();
+        try (Connection c = postgres.getPostgresDatabase().getConnection(); Statement st = c.createStatement()) {
+            st.execute("CREATE DATABASE plain");
+            st.execute("CREATE DATABASE partitioned");
+            st.execute("CREATE DATABASE partitioned_later");
+        }
+        migrateAndSeed(postgres.getDatabase("postgres", "plain"), "classpath:db/migration");
+        migrateAndSeed(postgres.getDatabase("postgres", "partitioned"), "classpath:db/migration", "classpath:db/partitioning");
+        // An existing database that enables partitioning after every other migration has run
+        DataSource later = postgres.getDatabase("postgres", "partitioned_later");
+        migrateAndSeed(later, "classpath:db/migration");
+        flyway(later, "classpath:db/migration", "classpath:db/partitioning").outOfOrder(true).load().migrate();
+        try (Connection c = later.getConnection(); Statement st = c.createStatement()) {
+            st.execute("ANALYZE");
+        }
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "plain"));
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        postgres.close();
+    }
+
+    Stream<Arguments> hotQueries() {
+        User user = userRepository.findByUsername("user42").orElseThrow();
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("findByUserAndUnlockDateTimeBefore",
+                sqlOf(() -> capsuleRepository.findByUserAndUnlockDateTimeBefore(user, now)));
+        queries.put("findByUserAndUnlockDateTimeAfter",
+                sqlOf(() -> capsuleRepository.findByUserAndUnlockDateTimeAfter(user, now)));
+        queries.put("findByUser", sqlOf(() -> capsuleRepository.findByUser(user)));
+        queries.put("findByIdAndUser_Username", sqlOf(() -> capsuleRepository.findByIdAndUser_Username(4041L, "user42")));
+        queries.put("findByUnlockedFalseAndUnlockDateTimeBefore",
+                sqlOf(() -> capsuleRepository.findByUnlockedFalseAndUnlockDateTimeBefore(now)));
+        queries.put("findByUserAndIdGreaterThanOrderByIdAsc",
+                sqlOf(() -> capsuleRepository.findByUserAndIdGreaterThanOrderByIdAsc(user, 1000L, PageRequest.of(0, 100))));
+        queries.put("findArchivableAfter",
+                sqlOf(() -> capsuleRepository.findArchivableAfter(now.minusDays(30), 1000L, PageRequest.of(0, 100))));
+        queries.put("findReferencedFilePaths",
+                sqlOf(() -> capsuleRepository.findReferencedFilePaths(List.of("uploads/4240_photo.jpg", "uploads/4250_photo.jpg"))));
+        queries.put("findFilePathsByFileName",
+                sqlOf(() -> capsuleRepository.findFilePathsByFileName(List.of("4240_photo.jpg", "4250_photo.jpg"))));
+        return onEveryDatabase(queries);
+    }
+
+    Stream<Arguments> aggregates() {
+        return onEveryDatabase(Map.of("countPerUsername", sqlOf(() -> capsuleRepository.countPerUsername())));
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("hotQueries")
+    void hotQueryUsesAnIndex(String database, String method, String sql) throws SQLException {
+        String plan = explain(postgres.getDatabase("postgres", database), sql);
+        // An empty partition (the default one when partitioning was enabled late) costs nothing to scan
+        assertFalse(plan.lines().anyMatch(line -> line.contains("Seq Scan on capsules") && !line.contains("cost=0.00..0.00 ")),
+                method + " scans capsules sequentially:\n" + plan);
+        assertTrue(plan.contains("Index"), method + " does not use an index:\n" + plan);
+    }
+
+    // Admin statistics cover every capsule of a shard, where one pass over the table beats any index
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("aggregates")
+    void aggregateReadsCapsulesOnce(String database, String method, String sql) throws SQLException {
+        String plan = explain(postgres.getDatabase("postgres", database), sql);
+        assertFalse(plan.contains("Nested Loop") || plan.contains("SubPlan"), method + " reads capsules repeatedly:\n" + plan);
+    }
+
+    @Test
+    void partitioningCanBeEnabledAfterLaterMigrations() throws SQLException {
+        try (Connection c = postgres.getDatabase("postgres", "partitioned_later").getConnection();
+             Statement st = c.createStatement()) {
+            assertEquals("p", single(st, "SELECT relkind::TEXT FROM pg_class WHERE relname = 'capsules'"));
+            assertEquals("100000", single(st, "SELECT count(*) FROM capsules"));
+            assertEquals("100000", single(st, "SELECT count(*) FROM capsules WHERE message_length = 0"));
+            String next = single(st, "INSERT INTO capsules (title, unlock_date_time, unlocked, user_id) " +
+                    "VALUES ('new', now(), false, 1) RETURNING id");
+            assertEquals("100001", next);
+        }
+    }
+
+    private static Stream<Arguments> onEveryDatabase(Map<String, String> queries) {
+        List<Arguments> arguments = new ArrayList<>();
+        for (String database : List.of("plain", "partitioned", "partitioned_later")) {
+            queries.forEach((method, sql) -> arguments.add(Arguments.of(database, method, sql)));
+        }
+        return arguments.stream();
+    }
+
+    // The one capsules query the call sent, as it went to the database
+    private static String sqlOf(Runnable call) {
+        List<String> executed = new ArrayList<>();
+        EXECUTED.set(executed);
+        try {
+            call.run();
+        } finally {
+            EXECUTED.remove();
+        }
+        List<String> sql = executed.stream().filter(statement -> statement.contains("capsules")).toList();
+        assertEquals(1, sql.size(), sql.toString());
+        return sql.get(0);
+    }
+
+    private static String single(Statement st, String sql) throws SQLException {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            assertTrue(rs.next());
+            return rs.getString(1);
+        }
+    }
+
+    private static void migrateAndSeed(DataSource dataSource, String... locations) throws SQLException {
+        flyway(dataSource, locations).load().migrate();
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("INSERT INTO users (username, password, email) " +
+                    "SELECT 'user' || g, 'x', 'user' || g || '@example.com' FROM generate_series(1, 1000) g");
+            // 100 capsules per user spread around the current year so every partition gets rows;
+            // a few recently due ones are still locked
+            st.execute("INSERT INTO capsules (title, file_path, unlock_date_time, unlocked, user_id) " +
+                    "SELECT 'capsule ' || g, " +
+                    "       CASE WHEN g % 10 = 0 THEN 'uploads/' || g || '_photo.jpg' END, t, t < now() - interval '1 hour', " +
+                    "       (g % 1000) + 1 " +
+                    "FROM generate_series(1, 100000) g, " +
+                    "     LATERAL (SELECT date_trunc('year', now())::timestamp - interval '6 years' + (g % 7300) * interval '1 day' + (g % 1440) * interval '1 minute') u(t)");
+            st.execute("ANALYZE");
+        }
+    }
+
+    private static FluentConfiguration flyway(DataSource dataSource, String... locations) {
+        return Flyway.configure().dataSource(dataSource).locations(locations).placeholders(Map.of("shard_index", "0"));
+    }
+
+    private static String explain(DataSource dataSource, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    // Hands Hibernate a DataSource that records every query it runs, with the parameters bound
+    @TestConfiguration
+    static class RecordingConfig {
+
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    if (bean instanceof LocalContainerEntityManagerFactoryBean factory) {
+                        factory.setDataSource(proxy(DataSource.class, factory.getDataSource(), (method, args, target) ->
+                                method.getName().equals("getConnection") ? recording((Connection) method.invoke(target, args))
+                                        : method.invoke(target, args)));
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static Connection recording(Connection connection) {
+            return proxy(Connection.class, connection, (method, args, target) ->
+                    method.getName().equals("prepareStatement") ? recording((PreparedStatement) method.invoke(target, args))
+                            : method.invoke(target, args));
+        }
+
+        private static PreparedStatement recording(PreparedStatement statement) {
+            return proxy(PreparedStatement.class, statement, (method, args, target) -> {
+                List<String> executed = EXECUTED.get();
+                if (executed != null && method.getName().equals("executeQuery")) {
+                    // The driver renders its statements with the bound parameters inlined
+                    executed.add(target.unwrap(PGStatement.class).toString());
+                }
+                return method.invoke(target, args);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, Handler<T> handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                try {
+                    return handler.invoke(method, args, target);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        private interface Handler<T> {
+            Object invoke(Method method, Object[] args, T target) throws Throwable;
+        }
+    }
+}
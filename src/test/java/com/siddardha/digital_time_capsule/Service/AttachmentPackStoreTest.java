@@ -0,0 +1,147 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttachmentPackStoreTest {
+
+    @TempDir
+    Path uploads;
+
+    @Test
+    void readsBackWhatWasAppended() throws Exception {
+        AttachmentPackStore store = open(1024);
+        store.append("uploads/1_a.txt", hot("1_a.txt", "first"));
+        store.append("uploads/2_b.txt", hot("2_b.txt", "second"));
+
+        assertTrue(store.contains("uploads/1_a.txt"));
+        assertFalse(store.contains("uploads/3_c.txt"));
+        assertEquals(6, store.size("uploads/2_b.txt"));
+        assertEquals("first", read(store, "uploads/1_a.txt"));
+        try (InputStream in = store.openStream("uploads/2_b.txt")) {
+            assertArrayEquals("second".getBytes(StandardCharsets.UTF_8), in.readAllBytes());
+        }
+        assertThrows(NoSuchFileException.class, () -> store.read("uploads/3_c.txt"));
+    }
+
+    @Test
+    void startsANewSegmentWhenTheActiveOneIsFull() throws Exception {
+        AttachmentPackStore store = open(10);
+        store.append("a", hot("a", "aaaaaa"));
+        store.append("b", hot("b", "bbbbbb"));
+        // Larger than a whole segment, still goes into one of its own
+        store.append("c", hot("c", "cccccccccccc"));
+
+        assertEquals(Set.of(0, 1, 2), store.segments());
+        assertEquals(2, store.activeSegment());
+        assertEquals(6, store.segmentSize(0));
+        assertEquals("aaaaaa", read(store, "a"));
+        assertEquals("bbbbbb", read(store, "b"));
+        assertEquals("cccccccccccc", read(store, "c"));
+    }
+
+    @Test
+    void compactionKeepsLiveEntriesAndDropsDeadOnes() throws Exception {
+        AttachmentPackStore store = open(10);
+        store.append("live", hot("live", "1111"));
+        store.append("dead", hot("dead", "2222"));
+        store.append("next", hot("next", "3333"));
+        assertEquals(1, store.activeSegment());
+
+        assertEquals(4, store.liveBytes(0, "live"::equals));
+        assertThrows(IllegalArgumentException.class, () -> store.compact(1, key -> true));
+        assertEquals(4, store.compact(0, "live"::equals));
+
+        assertFalse(store.segments().contains(0));
+        assertTrue(store.contains("live"));
+        assertFalse(store.contains("dead"));
+        assertEquals("1111", read(store, "live"));
+        assertEquals("3333", read(store, "next"));
+
+        // Appends never land in the compaction output
+        int compacted = store.activeSegment() - 1;
+        store.append("later", hot("later", "4444"));
+        assertEquals(Set.of(1, compacted, compacted + 1), store.segments());
+        assertEquals(4, store.segmentSize(compacted));
+    }
+
+    @Test
+    void reloadsTheIndexAfterARestart() throws Exception {
+        AttachmentPackStore store = open(10);
+        store.append("a", hot("a", "aaaaaa"));
+        store.append("b", hot("b", "bbbbbb"));
+        store.append("c", hot("c", "cc"));
+        store.close();
+
+        AttachmentPackStore restarted = open(10);
+        assertEquals(1, restarted.activeSegment());
+        assertEquals("aaaaaa", read(restarted, "a"));
+        assertEquals("bbbbbb", read(restarted, "b"));
+        assertEquals("cc", read(restarted, "c"));
+
+        restarted.append("d", hot("d", "dd"));
+        assertEquals(1, restarted.activeSegment());
+        assertEquals(10, restarted.segmentSize(1));
+    }
+
+    @Test
+    void skipsIndexLinesWithoutTheirData() throws Exception {
+        AttachmentPackStore store = open(1024);
+        store.append("a", hot("a", "aaaa"));
+        store.close();
+        // A crash between writing the data and the index line, and one halfway through the line
+        Files.writeString(uploads.resolve("packs/segment-00000.idx"), "4\t100\tghost\n8\t",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        AttachmentPackStore restarted = open(1024);
+        assertTrue(restarted.contains("a"));
+        assertFalse(restarted.contains("ghost"));
+        assertEquals("aaaa", read(restarted, "a"));
+
+        restarted.append("b", hot("b", "bbbb"));
+        restarted.close();
+        AttachmentPackStore again = open(1024);
+        assertEquals("aaaa", read(again, "a"));
+        assertEquals("bbbb", read(again, "b"));
+    }
+
+    @Test
+    void rejectsSegmentsTooLargeToMap() {
+        assertThrows(IllegalStateException.class, () -> open(Integer.MAX_VALUE + 1L));
+    }
+
+    private AttachmentPackStore open(long segmentMaxBytes) throws Exception {
+        AttachmentPackStore store = new AttachmentPackStore();
+        ReflectionTestUtils.setField(store, "uploadDir", uploads.toString());
+        ReflectionTestUtils.setField(store, "segmentMaxBytes", segmentMaxBytes);
+        store.loadIndex();
+        return store;
+    }
+
+    private Path hot(String name, String content) throws Exception {
+        return Files.writeString(uploads.resolve(name), content, StandardCharsets.UTF_8);
+    }
+
+    private static String read(AttachmentPackStore store, String key) throws Exception {
+        ByteBuffer buffer = store.read(key);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
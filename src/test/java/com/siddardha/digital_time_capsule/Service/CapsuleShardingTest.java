@@ -0,0 +1,246 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.ApplicationTest;
+import com.siddardha.digital_time_capsule.DTO.CapsuleResponse;
+import com.siddardha.digital_time_capsule.Model.User;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs the application against three embedded Postgres servers: shard 0 (which
+ * also holds the user directory) and two capsule shards.
+ */
+class CapsuleShardingTest extends ApplicationTest {
+
+    private static final List<EmbeddedPostgres> SHARDS = new ArrayList<>();
+
+    @DynamicPropertySource
+    static void shards(DynamicPropertyRegistry registry) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            SHARDS.add(EmbeddedPostgres.start());
+        }
+        registry.add("spring.datasource.url", () -> url(0));
+        registry.add("app.datasource.shards.urls", () -> url(1) + "," + url(2));
+    }
+
+    @AfterAll
+    static void stopShards() throws Exception {
+        for (EmbeddedPostgres shard : SHARDS) {
+            shard.close();
+        }
+    }
+
+    @Autowired
+    private AdminService adminService;
+
+    @Autowired
+    private CapsuleScheduler capsuleScheduler;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Test
+    void capsulesAreStoredOnTheShardTheirOwnerHashesTo() {
+        String prefix = prefix();
+        List<User> users = register(prefix, 30);
+        for (User user : users) {
+            capsuleService.createCapsule(capsuleRequest("hello " + user.getUsername()), user.getUsername());
+        }
+
+        int[] perShard = new int[3];
+        for (User user : users) {
+            int shard = shardRouter.shardFor(user.getId());
+            assertEquals(shard, user.getShardId());
+            perShard[shard]++;
+            List<Long> ids = jdbc(shard).queryForList("SELECT id FROM capsules WHERE user_id = ?", Long.class, user.getId());
+            assertEquals(1, ids.size());
+            assertEquals(shard, ids.get(0) >> 40, "capsule id outside the shard's range");
+            for (int other = 0; other < 3; other++) {
+                if (other != shard) {
+                    assertEquals(0, count(other, "SELECT count(*) FROM capsules WHERE user_id = ?", user.getId()));
+                }
+            }
+        }
+        for (int shard = 0; shard < 3; shard++) {
+            assertTrue(perShard[shard] > 0, "no users on shard " + shard);
+        }
+    }
+
+    @Test
+    void adminQueriesAggregateAllShards() {
+        String prefix = prefix();
+        List<User> users = register(prefix, 12);
+        for (int i = 0; i < users.size(); i++) {
+            for (int n = 0; n <= i % 3; n++) {
+                capsuleService.createCapsule(capsuleRequest("capsule " + n), users.get(i).getUsername());
+            }
+        }
+
+        Map<String, Long> counts = adminService.getCapsuleCountPerUser();
+        for (int i = 0; i < users.size(); i++) {
+            assertEquals(i % 3 + 1, counts.get(users.get(i).getUsername()));
+        }
+        long total = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            total += count(shard, "SELECT count(*) FROM capsules");
+        }
+        assertEquals(total, adminService.getAllCapsules().size());
+        assertEquals(total, adminService.getLockedCapsules().size() + adminService.getUnlockedCapsules().size());
+    }
+
+    @Test
+    void schedulerUnlocksDueCapsulesOnEveryShard() {
+        String prefix = prefix();
+        List<User> users = register(prefix, 9);
+        for (User user : users) {
+            capsuleService.createCapsule(capsuleRequest("soon"), user.getUsername());
+            jdbc(user.getShardId()).update("UPDATE capsules SET unlock_date_time = ? WHERE user_id = ?",
+                    LocalDateTime.now().minusMinutes(1), user.getId());
+        }
+
+        Set<String> mailThreads = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> mailThreads.add(Thread.currentThread().getName()))
+                .when(emailService).sendUnlockNotification(anyString(), anyString());
+
+        capsuleScheduler.unlockCapsules();
+
+        for (User user : users) {
+            assertEquals(1, count(user.getShardId(), "SELECT count(*) FROM capsules WHERE user_id = ? AND unlocked", user.getId()));
+        }
+        verify(emailService, atLeast(users.size())).sendUnlockNotification(anyString(), anyString());
+        // Mail delivery must not hold the fan-out pool that request paths share
+        assertEquals(Set.of(Thread.currentThread().getName()), mailThreads);
+    }
+
+    @Test
+    void rebalanceMovesOnlyTheUsersOfAnAddedShard() throws Exception {
+        String prefix = prefix();
+        List<User> users = register(prefix, 30);
+        List<Long> capsuleIds = new ArrayList<>();
+        String longMessage = "x".repeat(300_000);
+        for (User user : users) {
+            capsuleIds.add(capsuleService.createCapsule(capsuleRequest("short"), user.getUsername()).getId());
+            capsuleIds.add(capsuleService.createCapsule(capsuleRequest(longMessage), user.getUsername()).getId());
+        }
+
+        // Put the users of shard 2 back where two shards would have placed them, as if shard 2 was just added
+        List<User> onNewShard = users.stream().filter(user -> user.getShardId() == 2).toList();
+        for (User user : onNewShard) {
+            assertTrue(shardRebalancer.move(user.getId(), ShardRouter.jumpHash(user.getId(), 2)));
+        }
+        assertEquals(0, count(2, "SELECT count(*) FROM capsules WHERE user_id IN (SELECT id FROM users WHERE username LIKE ?)", prefix + "%"));
+
+        Map<String, Long> result = shardRebalancer.rebalance();
+        assertEquals(onNewShard.size(), result.get("moved"));
+        assertEquals(0, result.get("failed"));
+
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            assertEquals(user.getShardId(), shardRouter.shardOf(user.getUsername()));
+            assertEquals(2, count(user.getShardId(), "SELECT count(*) FROM capsules WHERE user_id = ?", user.getId()));
+            assertEquals(2, count(user.getShardId(),
+                    "SELECT count(*) FROM capsule_messages m JOIN capsules c ON c.id = m.capsule_id WHERE c.user_id = ?", user.getId()));
+            assertEquals("short", capsuleService.getCapsuleByIdAndUser(capsuleIds.get(2 * i), user.getUsername()).getMessage());
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            assertTrue(capsuleService.writeMessageTo(capsuleIds.get(2 * i + 1), user.getUsername(), body));
+            assertEquals(longMessage.length(), body.size());
+        }
+        // Large objects of moved messages are removed from the shards they left
+        long bodies = 0;
+        long largeObjects = 0;
+        for (int shard = 0; shard < 3; shard++) {
+            bodies += count(shard, "SELECT count(*) FROM capsule_messages");
+            largeObjects += count(shard, "SELECT count(*) FROM pg_largeobject_metadata");
+        }
+        assertEquals(bodies, largeObjects);
+
+        // Writes still work after the move
+        CapsuleResponse created = capsuleService.createCapsule(capsuleRequest("after"), onNewShard.get(0).getUsername());
+        assertEquals(2, created.getId() >> 40);
+    }
+
+    @Test
+    void movesWaitForReferenceChecksInProgress() throws Exception {
+        User user = register(prefix(), 1).get(0);
+        int target = (user.getShardId() + 1) % 3;
+        CountDownLatch checking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> check = CompletableFuture.runAsync(() -> shardRouter.withoutMoves(() -> {
+            checking.countDown();
+            try {
+                return release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(checking.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Boolean> move = CompletableFuture.supplyAsync(() -> {
+            try {
+                return shardRebalancer.move(user.getId(), target);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(500);
+        assertFalse(move.isDone(), "move ran during a reference check");
+
+        release.countDown();
+        check.get(5, TimeUnit.SECONDS);
+        assertTrue(move.get(10, TimeUnit.SECONDS));
+        assertTrue(shardRebalancer.move(user.getId(), user.getShardId()));
+    }
+
+    private List<User> register(String prefix, int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(register(prefix + i));
+        }
+        return users;
+    }
+
+    private static String prefix() {
+        return "u" + UUID.randomUUID().toString().substring(0, 8) + "_";
+    }
+
+    private static long count(int shard, String sql, Object... args) {
+        return jdbc(shard).queryForObject(sql, Long.class, args);
+    }
+
+    private static JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate(SHARDS.get(shard).getPostgresDatabase());
+    }
+
+    private static String url(int shard) {
+        return SHARDS.get(shard).getJdbcUrl("postgres", "postgres");
+    }
+}
@@ -0,0 +1,123 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.EmbeddedDatabaseTest;
+import com.siddardha.digital_time_capsule.Repository.CapsuleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrphanedAttachmentCollectorTest extends EmbeddedDatabaseTest {
+
+    @Autowired
+    private CapsuleRepository capsuleRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    private SimpleMeterRegistry registry;
+    private OrphanedAttachmentCollector collector;
+
+    // File sizes are powers of two, so the bytes reclaimed tell which files were reclaimed
+    @BeforeEach
+    void setUp() throws Exception {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(uploads)) {
+            for (Path path : stream) {
+                Files.deleteIfExists(path);
+            }
+        }
+        old(write("100_a.txt", 1));
+        old(write("200_b.txt", 2));
+        write("300_c.txt", 4);
+        old(write("400_d.txt", 8));
+        old(write("500_e.txt", 16));
+
+        // Stored while the upload directory was somewhere else
+        capsuleService.createCapsuleWithFile(capsuleRequest("message"), register(), "/old/uploads/200_b.txt");
+
+        registry = new SimpleMeterRegistry();
+        collector = new OrphanedAttachmentCollector(capsuleRepository, fileStorageService, shardRouter, registry);
+        ReflectionTestUtils.setField(collector, "batchSize", 2);
+        ReflectionTestUtils.setField(collector, "gracePeriodHours", 24L);
+    }
+
+    @Test
+    void deletesOldFilesNoCapsuleReferences() throws Exception {
+        ReflectionTestUtils.setField(collector, "dryRun", false);
+
+        // Five files in batches of two, in directory order
+        long reclaimed = 0;
+        for (int i = 0; i < 3; i++) {
+            reclaimed += collector.collectBatch();
+        }
+
+        assertEquals(25, reclaimed);
+        assertFalse(Files.exists(uploads.resolve("100_a.txt")));
+        assertTrue(Files.exists(uploads.resolve("200_b.txt")), "referenced file deleted");
+        assertTrue(Files.exists(uploads.resolve("300_c.txt")), "file within the grace period deleted");
+        assertFalse(Files.exists(uploads.resolve("400_d.txt")));
+        assertFalse(Files.exists(uploads.resolve("500_e.txt")));
+        assertEquals(5, registry.counter("attachments.gc.files.scanned").count());
+        assertEquals(3, registry.counter("attachments.gc.files.reclaimed").count());
+        assertEquals(25, registry.counter("attachments.gc.bytes.reclaimed").count());
+    }
+
+    @Test
+    void dryRunDeletesNothing() throws Exception {
+        ReflectionTestUtils.setField(collector, "dryRun", true);
+
+        long reclaimable = 0;
+        for (int i = 0; i < 3; i++) {
+            reclaimable += collector.collectBatch();
+        }
+
+        assertEquals(25, reclaimable);
+        for (String name : new String[]{"100_a.txt", "200_b.txt", "300_c.txt", "400_d.txt", "500_e.txt"}) {
+            assertTrue(Files.exists(uploads.resolve(name)), name + " deleted in dry-run mode");
+        }
+        assertEquals(0, registry.counter("attachments.gc.files.reclaimed").count());
+    }
+
+    @Test
+    void startsOverAfterTheLastBatch() throws Exception {
+        ReflectionTestUtils.setField(collector, "dryRun", false);
+        for (int i = 0; i < 3; i++) {
+            collector.collectBatch();
+        }
+
+        // The previous pass has ended, so the next batch lists the directory again
+        old(write("050_z.txt", 32));
+        long reclaimed = 0;
+        for (int i = 0; i < 2; i++) {
+            reclaimed += collector.collectBatch();
+        }
+
+        assertFalse(Files.exists(uploads.resolve("050_z.txt")));
+        assertEquals(32, reclaimed);
+        assertTrue(Files.exists(uploads.resolve("200_b.txt")));
+        assertTrue(Files.exists(uploads.resolve("300_c.txt")));
+    }
+
+    private static Path write(String name, int size) throws Exception {
+        return Files.write(uploads.resolve(name), new byte[size]);
+    }
+
+    private static void old(Path path) throws Exception {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+    }
+}
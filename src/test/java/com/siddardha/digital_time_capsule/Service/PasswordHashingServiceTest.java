@@ -0,0 +1,155 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.Config.PasswordEncoderConfig;
+import com.siddardha.digital_time_capsule.Exception.ServiceBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordHashingServiceTest {
+
+    @Test
+    void refusesWorkOnceTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PasswordHashingService service = new PasswordHashingService(blocking, registry, Runnable::run, 1, 1);
+        try {
+            CompletableFuture<String> running = service.encode("a");
+            CompletableFuture<String> queued = service.encode("b");
+            assertThrows(ServiceBusyException.class, () -> service.encode("c"));
+            assertEquals(1, registry.counter("auth.password.rejected").count());
+
+            release.countDown();
+            assertTrue(blocking.matches("a", running.get(5, TimeUnit.SECONDS)));
+            assertTrue(blocking.matches("b", queued.get(5, TimeUnit.SECONDS)));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void upgradesHashesMadeWithALowerCost() throws Exception {
+        String oldHash = new BCryptPasswordEncoder(4).encode("secret");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ExecutorService completion = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("completion").factory());
+        PasswordHashingService service = new PasswordHashingService(new BCryptPasswordEncoder(5), registry, completion, 1, 4);
+        try {
+            assertTrue(service.matches("secret", oldHash).get(5, TimeUnit.SECONDS));
+            assertFalse(service.matches("wrong", oldHash).get(5, TimeUnit.SECONDS));
+            assertTrue(service.needsUpgrade(oldHash));
+
+            AtomicReference<String> stored = new AtomicReference<>();
+            AtomicReference<String> storingThread = new AtomicReference<>();
+            CountDownLatch saved = new CountDownLatch(1);
+            service.upgradeInBackground("secret", hash -> {
+                stored.set(hash);
+                storingThread.set(Thread.currentThread().getName());
+                saved.countDown();
+                return true;
+            });
+            assertTrue(saved.await(5, TimeUnit.SECONDS));
+            // The store is database work and must not hold a hashing thread
+            assertEquals("completion", storingThread.get());
+            assertFalse(service.needsUpgrade(stored.get()));
+            assertTrue(service.matches("secret", stored.get()).get(5, TimeUnit.SECONDS));
+            assertEquals(1, registry.counter("auth.password.upgraded").count());
+        } finally {
+            service.shutdown();
+            completion.shutdown();
+        }
+    }
+
+    @Test
+    void calibrationStaysWithinBounds() {
+        assertEquals(4, PasswordEncoderConfig.calibrateStrength(Duration.ZERO, 4, 8));
+        assertEquals(8, PasswordEncoderConfig.calibrateStrength(Duration.ofMinutes(1), 4, 8));
+    }
+
+    /**
+     * Login storm against a small request pool, once hashing on the request threads
+     * and once through the hashing pool, while a cheap request is issued every 10 ms.
+     * Run with -Dbenchmark=true.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void loginThroughputUnderConcurrency() throws Exception {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(10);
+        String hash = encoder.encode("secret");
+        int logins = Integer.getInteger("benchmark.logins", 200);
+
+        for (boolean offloaded : new boolean[]{false, true}) {
+            ExecutorService requestThreads = Executors.newFixedThreadPool(20);
+            PasswordHashingService service = new PasswordHashingService(encoder, new SimpleMeterRegistry(), Runnable::run, 0, 64);
+            AtomicInteger succeeded = new AtomicInteger();
+            AtomicInteger refused = new AtomicInteger();
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < logins; i++) {
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                pending.add(done);
+                requestThreads.execute(() -> {
+                    if (!offloaded) {
+                        encoder.matches("secret", hash);
+                        succeeded.incrementAndGet();
+                        done.complete(null);
+                        return;
+                    }
+                    try {
+                        service.matches("secret", hash).whenComplete((matches, e) -> {
+                            succeeded.incrementAndGet();
+                            done.complete(null);
+                        });
+                    } catch (ServiceBusyException e) {
+                        refused.incrementAndGet();
+                        done.complete(null);
+                    }
+                });
+            }
+            List<Long> cheapMillis = new ArrayList<>();
+            while (pending.stream().anyMatch(f -> !f.isDone())) {
+                long submitted = System.nanoTime();
+                Future<?> cheap = requestThreads.submit(() -> { });
+                cheap.get();
+                cheapMillis.add((System.nanoTime() - submitted) / 1_000_000);
+                Thread.sleep(10);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            cheapMillis.sort(null);
+            System.out.printf("%s: %d logins in %.2f s (%.1f/s), %d refused, cheap request p50 %d ms, max %d ms%n",
+                    offloaded ? "hashing pool" : "request threads", succeeded.get(), seconds, succeeded.get() / seconds,
+                    refused.get(), cheapMillis.get(cheapMillis.size() / 2), cheapMillis.get(cheapMillis.size() - 1));
+            service.shutdown();
+            requestThreads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.siddardha.digital_time_capsule.Service;
+
+import com.siddardha.digital_time_capsule.ApplicationTest;
+import com.siddardha.digital_time_capsule.Config.ReadYourWritesContext;
+import com.siddardha.digital_time_capsule.Repository.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the application on a primary and a "replica" that is migrated but never
+ * receives any rows, i.e. a replica that lags forever.
+ */
+class ShardRouterReplicaTest extends ApplicationTest {
+
+    private static EmbeddedPostgres primary;
+    private static EmbeddedPostgres replica;
+
+    @DynamicPropertySource
+    static void databases(DynamicPropertyRegistry registry) throws Exception {
+        primary = EmbeddedPostgres.start();
+        replica = EmbeddedPostgres.start();
+        Flyway.configure()
+                .dataSource(replica.getPostgresDatabase())
+                .locations("classpath:db/migration")
+                .placeholders(Map.of("shard_index", "0"))
+                .load()
+                .migrate();
+        registry.add("spring.datasource.url", () -> primary.getJdbcUrl("postgres", "postgres"));
+        registry.add("app.datasource.replica.url", () -> replica.getJdbcUrl("postgres", "postgres"));
+    }
+
+    @AfterAll
+    static void stopDatabases() throws Exception {
+        primary.close();
+        replica.close();
+    }
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ThreadPoolTaskExecutor applicationTaskExecutor;
+
+    @AfterEach
+    void unpin() {
+        ReadYourWritesContext.clear();
+    }
+
+    @Test
+    void fanOutTasksDoNotKeepThePinOfAWrite() {
+        register();
+        ReadYourWritesContext.clear();
+
+        shardRouter.onEachShard(shard -> shardRouter.inShard(shard, false, () -> userRepository.count()));
+
+        assertEquals(List.of(false), shardRouter.onEachShard(shard -> ReadYourWritesContext.isPinned()));
+        assertEquals(List.of(0L), shardRouter.fanOut(() -> userRepository.count()));
+    }
+
+    @Test
+    void fanOutTasksInheritThePinOfTheCaller() {
+        register();
+        ReadYourWritesContext.pin();
+
+        assertEquals(List.of(true), shardRouter.onEachShard(shard -> ReadYourWritesContext.isPinned()));
+        assertEquals(List.of(userRepository.count()), shardRouter.fanOut(() -> userRepository.count()));
+    }
+
+    @Test
+    void applicationTaskThreadsDoNotKeepThePinOfAWrite() throws Exception {
+        // A read-write transaction on every thread of the pool, as the completion of a registration runs
+        int threads = applicationTaskExecutor.getCorePoolSize();
+        CyclicBarrier allBusy = new CyclicBarrier(threads);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            writes.add(applicationTaskExecutor.submit(() -> {
+                shardRouter.inShard(0, false, () -> userRepository.count());
+                allBusy.await(10, TimeUnit.SECONDS);
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get(30, TimeUnit.SECONDS);
+        }
+
+        List<Future<Boolean>> reads = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            reads.add(applicationTaskExecutor.submit(ReadYourWritesContext::isPinned));
+        }
+        for (Future<Boolean> read : reads) {
+            assertEquals(false, read.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void referenceChecksReadThePrimary() {
+        register();
+        ReadYourWritesContext.clear();
+
+        long onPrimary = ReadYourWritesContext.onPrimary(() -> userRepository.count());
+        assertEquals(List.of(onPrimary), shardRouter.withoutMoves(() -> shardRouter.fanOut(() -> userRepository.count())));
+        assertEquals(false, ReadYourWritesContext.isPinned());
+    }
+
+    @Test
+    void readsOfAUserTheReplicaHasNotSeenFallBackToThePrimary() {
+        String username = register();
+        capsuleService.createCapsule(capsuleRequest("message"), username);
+        ReadYourWritesContext.clear();
+
+        assertEquals(1, capsuleService.getLockedCapsules(username).size());
+        assertEquals(false, ReadYourWritesContext.isPinned());
+    }
+}